@@ -0,0 +1,94 @@
+package telran.cars.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares a JMH JSON result with the baseline JSON result of the same
+ * benchmarks. Prints score and allocation (bytes per operation) changes of each
+ * benchmark, mode and parameters and exits with status 1 if any score has
+ * become worse than the baseline by more than the given threshold (0.1 means
+ * 10%). The result becomes the baseline if there is no baseline yet or the
+ * system property jmh.baseline.update is true
+ */
+public class BaselineComparison {
+	static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+	static final String THROUGHPUT_MODE = "thrpt";
+
+	record Score(double value, String unit, Double allocation) {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("usage: BaselineComparison <result.json> <baseline.json> <threshold>");
+			System.exit(2);
+		}
+		Path result = Path.of(args[0]);
+		Path baseline = Path.of(args[1]);
+		double threshold = Double.parseDouble(args[2]);
+		if (!Files.exists(result)) {
+			System.err.println("no benchmark result " + result);
+			System.exit(2);
+		}
+		if (Boolean.getBoolean("jmh.baseline.update") || !Files.exists(baseline)) {
+			Files.createDirectories(baseline.toAbsolutePath().getParent());
+			Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("baseline " + baseline + " has been updated");
+			return;
+		}
+		Map<String, Score> resultScores = readScores(result.toFile());
+		Map<String, Score> baselineScores = readScores(baseline.toFile());
+		int nRegressions = 0;
+		for (Map.Entry<String, Score> entry : resultScores.entrySet()) {
+			String key = entry.getKey();
+			Score score = entry.getValue();
+			Score baselineScore = baselineScores.get(key);
+			if (baselineScore == null) {
+				System.out.printf("%-90s %12.3f %s (no baseline)%n", key, score.value(), score.unit());
+				continue;
+			}
+			// positive change means improvement: more operations per time unit or less time per operation
+			double change = key.endsWith(THROUGHPUT_MODE) ? score.value() / baselineScore.value() - 1
+					: baselineScore.value() / score.value() - 1;
+			boolean regression = change < -threshold;
+			if (regression) {
+				nRegressions++;
+			}
+			System.out.printf("%-90s %12.3f %s (baseline %.3f, %+.1f%%)%s%s%n", key, score.value(), score.unit(),
+					baselineScore.value(), change * 100, allocationChange(score, baselineScore),
+					regression ? " REGRESSION" : "");
+		}
+		if (nRegressions > 0) {
+			System.out.printf("%d benchmarks are worse than the baseline by more than %.0f%%%n", nRegressions,
+					threshold * 100);
+			System.exit(1);
+		}
+	}
+
+	private static String allocationChange(Score score, Score baselineScore) {
+		return score.allocation() == null || baselineScore.allocation() == null ? ""
+				: ", allocated %.0f B/op (baseline %.0f B/op)".formatted(score.allocation(),
+						baselineScore.allocation());
+	}
+
+	private static Map<String, Score> readScores(File file) throws IOException {
+		Map<String, Score> res = new TreeMap<>();
+		for (JsonNode benchmark : new ObjectMapper().readTree(file)) {
+			StringBuilder key = new StringBuilder(benchmark.get("benchmark").asText());
+			benchmark.path("params").fields()
+					.forEachRemaining(param -> key.append(" ").append(param.getKey()).append("=")
+							.append(param.getValue().asText()));
+			key.append(" ").append(benchmark.get("mode").asText());
+			JsonNode primaryMetric = benchmark.get("primaryMetric");
+			JsonNode allocation = benchmark.path("secondaryMetrics").path(ALLOCATION_METRIC).path("score");
+			res.put(key.toString(), new Score(primaryMetric.get("score").asDouble(),
+					primaryMetric.get("scoreUnit").asText(), allocation.isMissingNode() ? null : allocation.asDouble()));
+		}
+		return res;
+	}
+}
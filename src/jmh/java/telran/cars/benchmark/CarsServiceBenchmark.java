@@ -0,0 +1,180 @@
+package telran.cars.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import telran.cars.OwnersCarsApplication;
+import telran.cars.dto.*;
+import telran.cars.exceptions.TradeDealIllegalStateException;
+import telran.cars.service.CarsService;
+
+/**
+ * Benchmarks of the service hot paths against an embedded H2 database populated
+ * with the given number of cars. Every trial boots its own application context
+ * with its own in-memory database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class CarsServiceBenchmark {
+	static final int N_MODEL_NAMES = 100;
+	static final int N_MODEL_YEARS = 3;
+	static final int FIRST_MODEL_YEAR = 2020;
+	static final int CARS_PER_OWNER = 4;
+	static final long FIRST_PERSON_ID = 100000;
+	static final int N_MODELS = 10;
+
+	@Param({ "10000", "100000", "1000000" })
+	int nCars;
+
+	// analytics served by the in-memory fleet snapshot rather than by the database
+	@Param({ "false", "true" })
+	boolean fleetSnapshot;
+
+	ConfigurableApplicationContext ctx;
+	CarsService carsService;
+	int nOwners;
+	// numbers of the added cars have the second format of car numbers, so they never collide with the populated ones
+	final AtomicLong addedCars = new AtomicLong();
+	final QueryDto query = new QueryDto(QueryType.JPQL,
+			"select car.number from Car car where car.model.modelYear.name = :name and car.kilometers > :kilometers",
+			Map.of("name", "model1", "kilometers", 900000));
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		System.setProperty("spring.devtools.restart.enabled", "false");
+		ctx = new SpringApplicationBuilder(OwnersCarsApplication.class).web(WebApplicationType.NONE).run(
+				"--spring.datasource.url=jdbc:h2:mem:benchmark" + nCars + ";DB_CLOSE_DELAY=-1",
+				"--spring.datasource.driver-class-name=org.h2.Driver",
+				"--spring.datasource.username=sa",
+				"--spring.datasource.password=",
+				"--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+				"--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+				"--spring.jpa.hibernate.ddl-auto=validate",
+				"--spring.sql.init.mode=never",
+				"--app.query.max-rows=100000",
+				"--app.fleet.snapshot.enabled=" + fleetSnapshot,
+				"--logging.level.root=warn",
+				"--logging.level.telran=warn");
+		carsService = ctx.getBean(CarsService.class);
+		nOwners = Math.max(1, nCars / CARS_PER_OWNER);
+		populate(ctx.getBean(JdbcTemplate.class));
+		carsService.rebuildModelCounters();
+		carsService.checkFleetSnapshot();
+	}
+
+	private void populate(JdbcTemplate jdbcTemplate) {
+		jdbcTemplate.update("""
+				insert into models (model_name, model_year, company, engine_capacity, engine_power)
+				select 'model' || (x / ?), ? + mod(x, ?), 'company' || mod(x / ?, 10), 1000 + mod(x, 20) * 100,
+				60 + mod(x, 30) * 10 from system_range(0, ? - 1)
+				""", N_MODEL_YEARS, FIRST_MODEL_YEAR, N_MODEL_YEARS, N_MODEL_YEARS, N_MODEL_NAMES * N_MODEL_YEARS);
+		jdbcTemplate.update("""
+				insert into car_owners (id, name, email, birth_date)
+				select ? + x, 'name' || x, 'name' || x || '@gmail.com', dateadd(day, -mod(x, 25000), date '2005-01-01')
+				from system_range(0, ? - 1)
+				""", FIRST_PERSON_ID, nOwners);
+		jdbcTemplate.update("""
+				insert into cars (car_number, color, kilometers, car_state, model_name, model_year, owner_id)
+				select %s, 'color' || mod(x, 8), mod(x * 7919, 1000000), 'GOOD',
+				'model' || mod(x, ?), ? + mod(x / ?, ?), ? + mod(x, ?)
+				from system_range(0, ? - 1)
+				""".formatted(carNumberSql("x")), N_MODEL_NAMES, FIRST_MODEL_YEAR, N_MODEL_NAMES, N_MODEL_YEARS,
+				FIRST_PERSON_ID, nOwners, nCars);
+		jdbcTemplate.update("""
+				insert into trade_deals (id, date, car_number, owner_id)
+				select x + 1, dateadd(day, -mod(x, 3000), date '2024-01-01'), %s, ? + mod(x, ?)
+				from system_range(0, ? - 1)
+				""".formatted(carNumberSql("x")), FIRST_PERSON_ID, nOwners, nCars);
+		jdbcTemplate.execute("alter sequence trade_deals_seq restart with " + (nCars + 1000));
+	}
+
+	private static String carNumberSql(String x) {
+		return "lpad(cast(%1$s / 100000 as varchar), 3, '0') || '-' || lpad(cast(mod(%1$s / 1000, 100) as varchar), 2, '0')"
+				.formatted(x) + " || '-' || lpad(cast(mod(%s, 1000) as varchar), 3, '0')".formatted(x);
+	}
+
+	private static String carNumber(int index) {
+		return "%03d-%02d-%03d".formatted(index / 100000, index / 1000 % 100, index % 1000);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		ctx.close();
+	}
+
+	private String randomCarNumber() {
+		return carNumber(ThreadLocalRandom.current().nextInt(nCars));
+	}
+
+	private long randomPersonId() {
+		return FIRST_PERSON_ID + ThreadLocalRandom.current().nextInt(nOwners);
+	}
+
+	@Benchmark
+	public Object purchase() {
+		try {
+			return carsService.purchase(new TradeDealDto(randomCarNumber(), randomPersonId(), "2024-02-01"));
+		} catch (TradeDealIllegalStateException e) {
+			// the random new owner happened to be the current one
+			return e;
+		}
+	}
+
+	@Benchmark
+	public CarDto addCar() {
+		long index = addedCars.getAndIncrement();
+		String number = "%02d-%03d-%02d".formatted(index / 100000 % 100, index / 100 % 1000, index % 100);
+		int modelIndex = (int) (index % (N_MODEL_NAMES * N_MODEL_YEARS));
+		return carsService.addCar(new CarDto(number, "model" + modelIndex / N_MODEL_YEARS,
+				FIRST_MODEL_YEAR + modelIndex % N_MODEL_YEARS, "red", 0, CarState.NEW));
+	}
+
+	@Benchmark
+	public List<CarDto> getOwnerCars() {
+		return carsService.getOwnerCars(randomPersonId());
+	}
+
+	@Benchmark
+	public PersonDto getCarOwner() {
+		return carsService.getCarOwner(randomCarNumber());
+	}
+
+	@Benchmark
+	public List<ModelNameAmount> mostPopularModelNames() {
+		return carsService.mostPopularModelNames(N_MODELS);
+	}
+
+	@Benchmark
+	public List<ModelNameAmount> mostPopularModelNameByOwnerAges() {
+		return carsService.mostPopularModelNameByOwnerAges(N_MODELS, 30, 50);
+	}
+
+	@Benchmark
+	public String oneMostPopularColorModel() {
+		return carsService.oneMostPopularColorModel("model1");
+	}
+
+	@Benchmark
+	public EnginePowerCapacity minEnginePowerCapacityByOwnerAges() {
+		return carsService.minEnginePowerCapacityByOwnerAges(30, 50);
+	}
+
+	@Benchmark
+	public List<String> anyQuery() {
+		return carsService.anyQuery(query);
+	}
+}
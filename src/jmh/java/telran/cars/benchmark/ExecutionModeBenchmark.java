@@ -0,0 +1,94 @@
+package telran.cars.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import telran.cars.config.BoundedDataSource;
+
+/**
+ * Harness of the load comparison of request handling on Tomcat's pool of 200
+ * platform threads and on virtual threads when each request blocks on the
+ * database for the given latency (H2 query calling Thread.sleep). One operation
+ * is a burst of concurrent requests, the score is requests per second. The
+ * virtual mode requires Java 21 (-P benchmark,virtual-threads); no results of
+ * the comparison have been recorded yet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+	static final int TOMCAT_MAX_THREADS = 200;
+	static final int N_REQUESTS = 2000;
+
+	@Param({ "platform", "virtual" })
+	String mode;
+
+	@Param({ "50", "400" })
+	int poolSize;
+
+	@Param({ "20" })
+	int latencyMillis;
+
+	HikariDataSource pool;
+	BoundedDataSource dataSource;
+	ExecutorService executor;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		HikariConfig config = new HikariConfig();
+		config.setJdbcUrl("jdbc:h2:mem:execution" + poolSize + ";DB_CLOSE_DELAY=-1");
+		config.setUsername("sa");
+		config.setMaximumPoolSize(poolSize);
+		config.setMinimumIdle(poolSize);
+		pool = new HikariDataSource(config);
+		try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("create alias if not exists sleep for 'java.lang.Thread.sleep'");
+		}
+		dataSource = new BoundedDataSource(pool, poolSize, 30000);
+		executor = mode.equals("virtual") ? newVirtualThreadPerTaskExecutor()
+				: Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+		// reflective call keeps the benchmarks compilable on Java 17
+		return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdownNow();
+		pool.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(N_REQUESTS)
+	public void requests() throws Exception {
+		List<Future<?>> futures = new ArrayList<>(N_REQUESTS);
+		for (int i = 0; i < N_REQUESTS; i++) {
+			futures.add(executor.submit(this::request));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+	}
+
+	private Void request() throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("call sleep(" + latencyMillis + ")");
+		}
+		return null;
+	}
+}
@@ -8,5 +8,10 @@ public interface ServiceExceptionMessages {
 	String MODEL_NOT_FOUND = "Model not found";
 	String CAR_NOT_FOUND = "Car not found";
 	String SAME_CAR_OWNER = "Same car owner";
+	String TRADE_DEAL_CONFLICT = "Car has been concurrently traded, try again later";
+	String DUPLICATED_BATCH_ITEM = "Duplicated item in batch";
+	String WRONG_PAGE_TOKEN = "Wrong page token";
+	String MISSING_QUERY_PARAMETER = "Missing query parameter ";
+	String UNKNOWN_QUERY_PARAMETER = "Unknown query parameter ";
 
 }
\ No newline at end of file
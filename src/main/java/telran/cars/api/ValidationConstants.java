@@ -22,4 +22,18 @@ public interface ValidationConstants {
 	String WRONG_DATE_FORMAT = "Wrong date format, must be YYYY-MM-dd";
 	String MISSING_PERSON_EMAIL = "Missing email address";
 	String WRONG_EMAIL_FORMAT = "Wrong email format";
+	String WRONG_TRADE_DEAL_LINE_MESSAGE = "Trade deal line must contain car number, person ID and date";
+	String MISSING_TRADE_DEAL_DATE_MESSAGE = "Missing trade deal date";
+	String DEFAULT_PAGE_SIZE = "100";
+	int MAX_PAGE_SIZE = 1000;
+	String WRONG_MIN_PAGE_SIZE = "Page size must be positive";
+	String WRONG_MAX_PAGE_SIZE = "Page size cannot be greater than " + MAX_PAGE_SIZE;
+	int MAX_BATCH_SIZE = 10000;
+	String MISSING_BATCH_ITEMS_MESSAGE = "Batch must contain at least one item";
+	String MONTH_REGEXP = "\\d{4}-\\d{2}";
+	String WRONG_MONTH_FORMAT = "Wrong month format, must be YYYY-MM";
+	String MISSING_MODEL_NAMES_MESSAGE = "Missing model names";
+	int MAX_HISTOGRAM_MONTHS = 120;
+	String WRONG_HISTOGRAM_MONTHS = "Months range must contain from 1 to " + MAX_HISTOGRAM_MONTHS + " months";
+	String WRONG_BATCH_SIZE_MESSAGE = "Batch cannot contain more than " + MAX_BATCH_SIZE + " items";
 }
@@ -0,0 +1,95 @@
+package telran.cars.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Bounds the number of connections being held at the same time. Threads
+ * exceeding the bound wait in FIFO order at most the given timeout and then
+ * fail instead of piling up in the connection pool, a permit is returned when
+ * the connection is closed
+ */
+public class BoundedDataSource extends DelegatingDataSource {
+	final Semaphore permits;
+	final long timeoutMillis;
+
+	public BoundedDataSource(DataSource dataSource, int maxConnections, long timeoutMillis) {
+		super(dataSource);
+		this.permits = new Semaphore(maxConnections, true);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		acquire();
+		return bounded(() -> super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		acquire();
+		return bounded(() -> super.getConnection(username, password));
+	}
+
+	public int getAvailablePermits() {
+		return permits.availablePermits();
+	}
+
+	public int getQueueLength() {
+		return permits.getQueueLength();
+	}
+
+	private void acquire() throws SQLException {
+		try {
+			if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLTransientConnectionException(
+						"Connection is not available, waiting timed out after " + timeoutMillis + " ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for connection", e);
+		}
+	}
+
+	interface ConnectionSupplier {
+		Connection get() throws SQLException;
+	}
+
+	private Connection bounded(ConnectionSupplier supplier) throws SQLException {
+		Connection connection;
+		try {
+			connection = supplier.get();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		AtomicBoolean released = new AtomicBoolean();
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						} finally {
+							permits.release();
+						}
+					}
+					try {
+						return method.invoke(connection, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+}
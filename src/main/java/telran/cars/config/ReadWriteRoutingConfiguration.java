@@ -0,0 +1,51 @@
+package telran.cars.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Separate connection pools of the primary (spring.datasource.*) and of the
+ * read replica (app.datasource.replica.*), enabled by the replica URL. The
+ * replica user and password default to the primary ones
+ */
+@Configuration
+@ConditionalOnProperty("app.datasource.replica.url")
+public class ReadWriteRoutingConfiguration {
+
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	HikariDataSource primaryDataSource(DataSourceProperties properties) {
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	@ConfigurationProperties("app.datasource.replica.hikari")
+	HikariDataSource replicaDataSource(DataSourceProperties properties,
+			@Value("${app.datasource.replica.url}") String url,
+			@Value("${app.datasource.replica.username:}") String username,
+			@Value("${app.datasource.replica.password:}") String password) {
+		return DataSourceBuilder.create().type(HikariDataSource.class).url(url)
+				.username(username.isEmpty() ? properties.determineUsername() : username)
+				.password(password.isEmpty() ? properties.determinePassword() : password).build();
+	}
+
+	@Bean
+	@Primary
+	DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+			@Qualifier("replicaDataSource") DataSource replica,
+			@Value("${app.datasource.replica.retry-millis:30000}") long replicaRetryMillis) {
+		return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primary, replica, replicaRetryMillis));
+	}
+}
@@ -0,0 +1,59 @@
+package telran.cars.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Routes connections of read-only transactions to the replica and all other
+ * connections to the primary. If the replica doesn't give a connection, reads
+ * fall back to the primary and the replica isn't tried again during the retry
+ * interval. Must be wrapped into LazyConnectionDataSourceProxy, so that the
+ * connection is taken after the transaction has been marked read-only
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+	final DataSource primary;
+	final DataSource replica;
+	final long replicaRetryMillis;
+	final AtomicLong replicaDownUntil = new AtomicLong();
+
+	public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, long replicaRetryMillis) {
+		this.primary = primary;
+		this.replica = replica;
+		this.replicaRetryMillis = replicaRetryMillis;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return isReplicaRead() ? getReplicaConnection(null, null) : primary.getConnection();
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return isReplicaRead() ? getReplicaConnection(username, password)
+				: primary.getConnection(username, password);
+	}
+
+	private boolean isReplicaRead() {
+		return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+				&& System.currentTimeMillis() >= replicaDownUntil.get();
+	}
+
+	private Connection getReplicaConnection(String username, String password) throws SQLException {
+		try {
+			return username == null ? replica.getConnection() : replica.getConnection(username, password);
+		} catch (SQLException e) {
+			replicaDownUntil.set(System.currentTimeMillis() + replicaRetryMillis);
+			log.warn("replica is unavailable, reads go to primary for {} ms: {}", replicaRetryMillis, e.getMessage());
+			return username == null ? primary.getConnection() : primary.getConnection(username, password);
+		}
+	}
+}
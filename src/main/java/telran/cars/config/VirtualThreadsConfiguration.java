@@ -0,0 +1,42 @@
+package telran.cars.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * With spring.threads.virtual.enabled=true on Java 21 Spring Boot runs request
+ * handling (Tomcat) and async work (the application task executor) on virtual
+ * threads. Since the number of request threads is no longer bounded, each
+ * connection pool is wrapped so that at most app.datasource.max-connections
+ * (the pool size by default) threads hold its connections while the others
+ * wait in FIFO order at most the pool's connection timeout
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadsConfiguration {
+
+	@Bean
+	static BeanPostProcessor boundedDataSourcePostProcessor(
+			@Value("${app.datasource.max-connections:0}") int maxConnections) {
+		return new BeanPostProcessor() {
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) {
+				if (bean instanceof HikariDataSource dataSource) {
+					int bound = maxConnections > 0 ? maxConnections : dataSource.getMaximumPoolSize();
+					log.info("data source {} is bounded by {} connections for virtual threads", beanName, bound);
+					return new BoundedDataSource(dataSource, bound, dataSource.getConnectionTimeout());
+				}
+				return bean;
+			}
+		};
+	}
+}
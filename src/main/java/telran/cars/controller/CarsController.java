@@ -1,8 +1,23 @@
 package telran.cars.controller;
 
+import java.io.*;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import static telran.cars.api.ValidationConstants.*;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
@@ -16,34 +31,87 @@ import telran.cars.service.CarsService;
 @RequiredArgsConstructor
 @Slf4j
 public class CarsController {
+	public static final String NEXT_PAGE_TOKEN_HEADER = "Next-Page-Token";
+
 	final CarsService carsService;
+	final ObjectMapper mapper;
+
+	@Value("${app.models.max-age-seconds:60}")
+	long modelsMaxAgeSeconds;
 
 	@PostMapping
 	CarDto addCar(@RequestBody @Valid CarDto carDto) {
 		// annotation @RequestBody informs Spring about conversion of JSON inside a
 		// request to the given parameter
-		log.debug("addCar: received car data: {}", carDto);
+		log.debug("addCar: received car {}", carDto.number());
 		return carsService.addCar(carDto);
 	}
 
+	@PostMapping("batch")
+	List<BatchItemResultDto> addCars(
+			@RequestBody @NotEmpty(message = MISSING_BATCH_ITEMS_MESSAGE) @Size(max = MAX_BATCH_SIZE, message = WRONG_BATCH_SIZE_MESSAGE) List<@Valid CarDto> carDtos) {
+		log.debug("addCars: received {} cars", carDtos.size());
+		return carsService.addCars(carDtos);
+	}
+
+	@PostMapping("owner/batch")
+	Map<String, CarOwnerResultDto> getCarOwners(
+			@RequestBody @NotEmpty(message = MISSING_BATCH_ITEMS_MESSAGE) @Size(max = MAX_BATCH_SIZE, message = WRONG_BATCH_SIZE_MESSAGE) List<@NotEmpty(message = MISSING_CAR_NUMBER_MESSAGE) @Pattern(regexp = CAR_NUMBER_REGEXP, message = WRONG_CAR_NUMBER_MESSAGE) String> carNumbers) {
+		log.debug("getCarOwners: received {} car numbers", carNumbers.size());
+		return carsService.getCarOwners(carNumbers);
+	}
+
+	@PostMapping("person/batch")
+	List<BatchItemResultDto> addPersons(
+			@RequestBody @NotEmpty(message = MISSING_BATCH_ITEMS_MESSAGE) @Size(max = MAX_BATCH_SIZE, message = WRONG_BATCH_SIZE_MESSAGE) List<@Valid PersonDto> personDtos) {
+		log.debug("addPersons: received {} persons", personDtos.size());
+		return carsService.addPersons(personDtos);
+	}
+
+	@PostMapping("models/batch")
+	List<BatchItemResultDto> addModels(
+			@RequestBody @NotEmpty(message = MISSING_BATCH_ITEMS_MESSAGE) @Size(max = MAX_BATCH_SIZE, message = WRONG_BATCH_SIZE_MESSAGE) List<@Valid ModelDto> modelDtos) {
+		log.debug("addModels: received {} models", modelDtos.size());
+		return carsService.addModels(modelDtos);
+	}
+
 	@PostMapping("person")
 	PersonDto addPerson(@RequestBody @Valid PersonDto personDto) {
-		log.debug("addPerson: received personData data: {}", personDto);
+		log.debug("addPerson: received person {}", personDto.id());
 		return carsService.addPerson(personDto);
 	}
 
 	@PutMapping("person")
 	PersonDto updatePerson(@RequestBody @Valid PersonDto personDto) {
-		log.debug("updatePerson: received personData data: {}", personDto);
+		log.debug("updatePerson: received person {}", personDto.id());
 		return carsService.updatePerson(personDto);
 	}
 
 	@PutMapping("trade")
 	TradeDealDto purchase(@RequestBody @Valid TradeDealDto tradeDealDto) {
-		log.debug("purchase: received trade deal data: {}", tradeDealDto);
+		log.debug("purchase: received trade deal of car {}", tradeDealDto.carNumber());
 		return carsService.purchase(tradeDealDto);
 	}
 
+	@PutMapping("trade/batch")
+	List<TradeDealDto> purchaseAll(
+			@RequestBody @NotEmpty(message = MISSING_BATCH_ITEMS_MESSAGE) @Size(max = MAX_BATCH_SIZE, message = WRONG_BATCH_SIZE_MESSAGE) List<@Valid TradeDealDto> tradeDealDtos) {
+		log.debug("purchaseAll: received {} trade deals", tradeDealDtos.size());
+		return carsService.purchaseAll(tradeDealDtos);
+	}
+
+	@PostMapping("trade/import")
+	TradeDealsImportDto importTradeDeals(@RequestParam("file") MultipartFile file,
+			@RequestParam(name = "importName", required = false) String importName) throws IOException {
+		String name = Objects.requireNonNullElse(importName,
+				Objects.requireNonNullElse(file.getOriginalFilename(), file.getName()));
+		log.debug("importTradeDeals: received file {} of {} bytes for import {}", file.getOriginalFilename(),
+				file.getSize(), name);
+		try (InputStream input = file.getInputStream()) {
+			return carsService.importTradeDeals(name, input);
+		}
+	}
+
 	@DeleteMapping("person/{id}")
 	PersonDto deletePerson(
 			@PathVariable(name = "id") @NotNull(message = MISSING_PERSON_ID_MESSAGE) @Min(value = MIN_PERSON_ID_VALUE, message = WRONG_MIN_PERSON_ID_VALUE) @Max(value = MAX_PERSON_ID_VALUE, message = WRONG_MAX_PERSON_ID_VALUE) long id) {
@@ -51,6 +119,21 @@ public class CarsController {
 		return carsService.deletePerson(id);
 	}
 
+	@DeleteMapping("person/without-cars")
+	BulkDeleteDto deleteOwnersWithoutCars(@RequestParam(name = "archive", defaultValue = "false") boolean archive) {
+		log.debug("delete owners without cars: archive {}", archive);
+		return carsService.deleteOwnersWithoutCars(archive);
+	}
+
+	@DeleteMapping("models/{modelName}/{modelYear}/cars")
+	BulkDeleteDto deleteModelCars(
+			@PathVariable(name = "modelName") @NotEmpty(message = MISSING_MODEL_NAME_MESSAGE) String modelName,
+			@PathVariable(name = "modelYear") @Min(value = MIN_MODEL_YEAR, message = WRONG_MIN_YEAR) int modelYear,
+			@RequestParam(name = "archive", defaultValue = "false") boolean archive) {
+		log.debug("delete model cars: cars of model {} {}, archive {}", modelName, modelYear, archive);
+		return carsService.deleteModelCars(modelName, modelYear, archive);
+	}
+
 	@DeleteMapping("{carNumber}")
 	CarDto deleteCar(
 			@PathVariable(name = "carNumber") @NotEmpty(message = MISSING_CAR_NUMBER_MESSAGE) @Pattern(regexp = CAR_NUMBER_REGEXP, message = WRONG_CAR_NUMBER_MESSAGE) String carNumber) {
@@ -59,33 +142,149 @@ public class CarsController {
 	}
 
 	@GetMapping("person/{id}")
-	List<CarDto> getOwnerCars(
-			@PathVariable(name = "id") @NotNull(message = MISSING_PERSON_ID_MESSAGE) @Min(value = MIN_PERSON_ID_VALUE, message = WRONG_MIN_PERSON_ID_VALUE) @Max(value = MAX_PERSON_ID_VALUE, message = WRONG_MAX_PERSON_ID_VALUE) long id) {
-		List<CarDto> res = carsService.getOwnerCars(id);
-
+	// a page of the cars, the token of the next page is sent in the NEXT_PAGE_TOKEN_HEADER header
+	ResponseEntity<List<CarDto>> getOwnerCars(
+			@PathVariable(name = "id") @NotNull(message = MISSING_PERSON_ID_MESSAGE) @Min(value = MIN_PERSON_ID_VALUE, message = WRONG_MIN_PERSON_ID_VALUE) @Max(value = MAX_PERSON_ID_VALUE, message = WRONG_MAX_PERSON_ID_VALUE) long id,
+			@RequestParam(name = "token", required = false) String token,
+			@RequestParam(name = "size", defaultValue = DEFAULT_PAGE_SIZE) @Min(value = 1, message = WRONG_MIN_PAGE_SIZE) @Max(value = MAX_PAGE_SIZE, message = WRONG_MAX_PAGE_SIZE) int size,
+			WebRequest request) {
+		if (isNotModified(carsService.getOwnerCarsETag(id), request)) {
+			log.trace("getOwnerCars: cars of person with id {} have not been modified", id);
+			return null;
+		}
+		PageDto<CarDto> page = carsService.getOwnerCarsPage(id, token, size);
+		List<CarDto> res = page.items();
 		if (res.isEmpty()) {
 			log.warn("getOwnerCars: no cars for person with id {}", id);
 		} else {
 			log.trace("getOwnerCars: cars of person with id {} {}", id, res);
 		}
-		return res;
+		return page.next() == null ? ResponseEntity.ok(res)
+				: ResponseEntity.ok().header(NEXT_PAGE_TOKEN_HEADER, page.next()).body(res);
+	}
+
+	@GetMapping("trade/car/{carNumber}")
+	PageDto<TradeDealHistoryDto> getCarTradeDeals(
+			@PathVariable(name = "carNumber") @NotEmpty(message = MISSING_CAR_NUMBER_MESSAGE) @Pattern(regexp = CAR_NUMBER_REGEXP, message = WRONG_CAR_NUMBER_MESSAGE) String carNumber,
+			@RequestParam(name = "token", required = false) String token,
+			@RequestParam(name = "size", defaultValue = DEFAULT_PAGE_SIZE) @Min(value = 1, message = WRONG_MIN_PAGE_SIZE) @Max(value = MAX_PAGE_SIZE, message = WRONG_MAX_PAGE_SIZE) int size) {
+		log.debug("getCarTradeDeals: car number {}, page size {}", carNumber, size);
+		return carsService.getCarTradeDeals(carNumber, token, size);
+	}
+
+	@GetMapping("trade/person/{id}")
+	PageDto<TradeDealHistoryDto> getOwnerTradeDeals(
+			@PathVariable(name = "id") @NotNull(message = MISSING_PERSON_ID_MESSAGE) @Min(value = MIN_PERSON_ID_VALUE, message = WRONG_MIN_PERSON_ID_VALUE) @Max(value = MAX_PERSON_ID_VALUE, message = WRONG_MAX_PERSON_ID_VALUE) long id,
+			@RequestParam(name = "token", required = false) String token,
+			@RequestParam(name = "size", defaultValue = DEFAULT_PAGE_SIZE) @Min(value = 1, message = WRONG_MIN_PAGE_SIZE) @Max(value = MAX_PAGE_SIZE, message = WRONG_MAX_PAGE_SIZE) int size) {
+		log.debug("getOwnerTradeDeals: person with id {}, page size {}", id, size);
+		return carsService.getOwnerTradeDeals(id, token, size);
+	}
+
+	@GetMapping("trade/car/{carNumber}/history")
+	List<TradeDealHistoryDto> getCarHistory(
+			@PathVariable(name = "carNumber") @NotEmpty(message = MISSING_CAR_NUMBER_MESSAGE) @Pattern(regexp = CAR_NUMBER_REGEXP, message = WRONG_CAR_NUMBER_MESSAGE) String carNumber) {
+		log.debug("getCarHistory: car number {}", carNumber);
+		return carsService.getCarHistory(carNumber);
+	}
+
+	@GetMapping("trade/person/{id}/history")
+	List<TradeDealHistoryDto> getOwnerHistory(
+			@PathVariable(name = "id") @NotNull(message = MISSING_PERSON_ID_MESSAGE) @Min(value = MIN_PERSON_ID_VALUE, message = WRONG_MIN_PERSON_ID_VALUE) @Max(value = MAX_PERSON_ID_VALUE, message = WRONG_MAX_PERSON_ID_VALUE) long id) {
+		log.debug("getOwnerHistory: person with id {}", id);
+		return carsService.getOwnerHistory(id);
+	}
+
+	@GetMapping("trade/histogram")
+	List<ModelDealsHistogramDto> getTradeDealsHistogram(
+			@RequestParam(name = "models") @NotEmpty(message = MISSING_MODEL_NAMES_MESSAGE) List<String> models,
+			@RequestParam(name = "from") @Pattern(regexp = MONTH_REGEXP, message = WRONG_MONTH_FORMAT) String from,
+			@RequestParam(name = "to") @Pattern(regexp = MONTH_REGEXP, message = WRONG_MONTH_FORMAT) String to) {
+		log.debug("getTradeDealsHistogram: models {}, months {} - {}", models, from, to);
+		return carsService.tradeDealsHistogram(models, from, to);
 	}
 
 	@GetMapping("{carNumber}")
 	PersonDto getCarOwner(
-			@PathVariable(name = "carNumber") @NotEmpty(message = MISSING_CAR_NUMBER_MESSAGE) @Pattern(regexp = CAR_NUMBER_REGEXP, message = WRONG_CAR_NUMBER_MESSAGE) String carNumber) {
+			@PathVariable(name = "carNumber") @NotEmpty(message = MISSING_CAR_NUMBER_MESSAGE) @Pattern(regexp = CAR_NUMBER_REGEXP, message = WRONG_CAR_NUMBER_MESSAGE) String carNumber,
+			WebRequest request) {
 		log.debug("getCarOwner: received car number {}", carNumber);
+		if (isNotModified(carsService.getCarOwnerETag(carNumber), request)) {
+			log.trace("getCarOwner: owner of car {} has not been modified", carNumber);
+			return null;
+		}
 		return carsService.getCarOwner(carNumber);
 	}
 
+	/**
+	 * sets the ETag header and checks If-None-Match; the tag is read before the
+	 * representation, so a concurrent write may only make the tag older than the
+	 * body, which costs the client one more full response rather than a stale one
+	 */
+	private boolean isNotModified(String eTag, WebRequest request) {
+		return eTag != null && request.checkNotModified(eTag);
+	}
+
 	@GetMapping("models")
-	List<String> getPopularModels() {
+	ResponseEntity<List<String>> getPopularModels() {
 		log.debug("getPopularModels: query");
-		return carsService.mostSoldModelNames();
+		return ResponseEntity.ok().cacheControl(CacheControl.maxAge(modelsMaxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+				.body(carsService.mostSoldModelNames());
+	}
+
+	@PostMapping("models/counters/rebuild")
+	int rebuildModelCounters() {
+		log.debug("rebuildModelCounters: command");
+		return carsService.rebuildModelCounters();
+	}
+
+	@PostMapping("fleet/snapshot/check")
+	FleetSnapshotCheckDto checkFleetSnapshot() {
+		log.debug("checkFleetSnapshot: command");
+		return carsService.checkFleetSnapshot();
+	}
+
+	@GetMapping("models/cache")
+	CacheStatsDto getModelsCacheStats() {
+		return carsService.getModelsCacheStats();
+	}
+
+	@GetMapping("entities/cache")
+	Map<String, CacheStatsDto> getEntityCachesStats() {
+		return carsService.getEntityCachesStats();
 	}
 
 	@PostMapping("query")
 	List<String> getQueryResult(@RequestBody QueryDto queryDto) {
 		return carsService.anyQuery(queryDto);
 	}
+
+	@GetMapping("query/cache")
+	CacheStatsDto getQueryTemplatesStats() {
+		return carsService.getQueryTemplatesStats();
+	}
+
+	@PostMapping(value = "query", params = "stream=true")
+	// rows are JSON arrays, a result truncated by the cap of the rows ends by the JSON object
+	// of QueryStreamResultDto, the headers are sent before the rows are known
+	ResponseEntity<StreamingResponseBody> getQueryResultStream(@RequestBody QueryDto queryDto) {
+		log.debug("getQueryResultStream: query {}", queryDto.query());
+		StreamingResponseBody body = output -> {
+			QueryStreamResultDto res = carsService.anyQueryStream(queryDto, row -> writeNdjsonLine(output, row));
+			if (res.truncated()) {
+				writeNdjsonLine(output, res);
+			}
+			log.trace("getQueryResultStream: {} rows have been written, truncated {}", res.rows(), res.truncated());
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+	}
+
+	private void writeNdjsonLine(OutputStream output, Object value) {
+		try {
+			output.write(mapper.writeValueAsBytes(value));
+			output.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 }
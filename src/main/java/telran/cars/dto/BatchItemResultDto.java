@@ -0,0 +1,11 @@
+package telran.cars.dto;
+
+public record BatchItemResultDto(String id, boolean success, String message) {
+	public static BatchItemResultDto ok(String id) {
+		return new BatchItemResultDto(id, true, null);
+	}
+
+	public static BatchItemResultDto error(String id, String message) {
+		return new BatchItemResultDto(id, false, message);
+	}
+}
@@ -0,0 +1,7 @@
+package telran.cars.dto;
+
+public interface BirthYearCount {
+	Integer getYear();
+
+	Long getCount();
+}
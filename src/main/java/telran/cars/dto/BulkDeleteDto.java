@@ -0,0 +1,5 @@
+package telran.cars.dto;
+
+// rows deleted, rows deleted or updated by the cascades of the foreign keys, deleted rows copied to the archive
+public record BulkDeleteDto(long deleted, long cascaded, long archived) {
+}
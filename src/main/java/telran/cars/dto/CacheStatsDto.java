@@ -0,0 +1,8 @@
+package telran.cars.dto;
+
+public record CacheStatsDto(long hits, long misses, long size, double hitRatio) {
+	public static CacheStatsDto of(long hits, long misses, long size) {
+		long requests = hits + misses;
+		return new CacheStatsDto(hits, misses, size, requests == 0 ? 0 : (double) hits / requests);
+	}
+}
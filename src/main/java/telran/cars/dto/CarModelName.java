@@ -0,0 +1,7 @@
+package telran.cars.dto;
+
+public interface CarModelName {
+	String getNumber();
+
+	String getModelName();
+}
@@ -0,0 +1,16 @@
+package telran.cars.dto;
+
+import java.time.LocalDate;
+
+// owner's fields are null for a car without owner
+public interface CarNumberOwner {
+	String getNumber();
+
+	Long getId();
+
+	String getName();
+
+	LocalDate getBirthDate();
+
+	String getEmail();
+}
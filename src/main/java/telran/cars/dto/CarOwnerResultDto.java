@@ -0,0 +1,12 @@
+package telran.cars.dto;
+
+// owner of a found car is null if the car has no owner
+public record CarOwnerResultDto(boolean found, PersonDto owner, String message) {
+	public static CarOwnerResultDto of(PersonDto owner) {
+		return new CarOwnerResultDto(true, owner, null);
+	}
+
+	public static CarOwnerResultDto notFound(String message) {
+		return new CarOwnerResultDto(false, null, message);
+	}
+}
@@ -0,0 +1,10 @@
+package telran.cars.dto;
+
+// versions of a car and of its owner, owner's ID and version are null for a car without owner
+public interface CarOwnerVersion {
+	Long getCarVersion();
+
+	Long getOwnerId();
+
+	Long getOwnerVersion();
+}
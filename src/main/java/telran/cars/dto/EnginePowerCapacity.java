@@ -4,4 +4,21 @@ public interface EnginePowerCapacity {
 	int getPower();
 
 	int getCapacity();
+
+	static EnginePowerCapacity of(int power, int capacity) {
+		return new Value(power, capacity);
+	}
+
+	// computed in the service rather than projected by a query
+	record Value(int power, int capacity) implements EnginePowerCapacity {
+		@Override
+		public int getPower() {
+			return power;
+		}
+
+		@Override
+		public int getCapacity() {
+			return capacity;
+		}
+	}
 }
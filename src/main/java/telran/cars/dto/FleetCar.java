@@ -0,0 +1,24 @@
+package telran.cars.dto;
+
+import java.time.LocalDate;
+
+// row of the fleet snapshot load, owner's ID and birth date are null for a car without owner
+public interface FleetCar {
+	String getNumber();
+
+	String getModelName();
+
+	Integer getModelYear();
+
+	Long getOwnerId();
+
+	LocalDate getBirthDate();
+
+	Integer getKilometers();
+
+	String getColor();
+
+	CarState getState();
+
+	Long getVersion();
+}
@@ -0,0 +1,5 @@
+package telran.cars.dto;
+
+// cars compared with the database, cars differing or missing on either side, whether the snapshot has been reloaded
+public record FleetSnapshotCheckDto(long cars, long mismatches, boolean reloaded) {
+}
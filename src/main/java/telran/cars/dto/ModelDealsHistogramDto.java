@@ -0,0 +1,8 @@
+package telran.cars.dto;
+
+import java.util.List;
+
+// counts of trade deals of the model by months starting from the given one (YYYY-MM)
+public record ModelDealsHistogramDto(String modelName, String fromMonth, List<Long> counts) {
+
+}
@@ -4,4 +4,21 @@ public interface ModelNameAmount {
 	String getName();
 
 	Long getAmount();
+
+	static ModelNameAmount of(String name, long amount) {
+		return new Value(name, amount);
+	}
+
+	// computed in the service rather than projected by a query
+	record Value(String name, Long amount) implements ModelNameAmount {
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public Long getAmount() {
+			return amount;
+		}
+	}
 }
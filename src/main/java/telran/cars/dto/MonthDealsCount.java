@@ -0,0 +1,9 @@
+package telran.cars.dto;
+
+public interface MonthDealsCount {
+	Integer getYear();
+
+	Integer getMonth();
+
+	Long getCount();
+}
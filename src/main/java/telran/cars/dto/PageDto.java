@@ -0,0 +1,11 @@
+package telran.cars.dto;
+
+import java.util.List;
+
+/**
+ * page of a keyset paginated listing; 'next' is an opaque token of the next
+ * page, null for the last page
+ */
+public record PageDto<T>(List<T> items, String next) {
+
+}
@@ -1,5 +1,9 @@
 package telran.cars.dto;
 
-public record QueryDto(QueryType type, String query) {
+import java.util.Map;
 
+public record QueryDto(QueryType type, String query, Map<String, Object> parameters) {
+	public QueryDto(QueryType type, String query) {
+		this(type, query, null);
+	}
 }
@@ -0,0 +1,9 @@
+package telran.cars.dto;
+
+/**
+ * outcome of a streamed query; 'truncated' means the result has more rows than
+ * the streamed ones, the stream has been stopped at the cap of the rows
+ */
+public record QueryStreamResultDto(long rows, boolean truncated) {
+
+}
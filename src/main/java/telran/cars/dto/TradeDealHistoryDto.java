@@ -0,0 +1,5 @@
+package telran.cars.dto;
+
+public record TradeDealHistoryDto(Long id, String carNumber, Long personId, String date) {
+
+}
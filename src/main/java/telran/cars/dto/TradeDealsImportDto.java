@@ -0,0 +1,6 @@
+package telran.cars.dto;
+
+public record TradeDealsImportDto(String importName, long linesProcessed, long dealsImported, long linesRejected,
+		boolean completed) {
+
+}
@@ -0,0 +1,10 @@
+package telran.cars.exceptions;
+
+import telran.cars.api.ServiceExceptionMessages;
+
+@SuppressWarnings("serial")
+public class TradeDealConflictException extends IllegalStateException {
+	public TradeDealConflictException() {
+		super(ServiceExceptionMessages.TRADE_DEAL_CONFLICT);
+	}
+}
\ No newline at end of file
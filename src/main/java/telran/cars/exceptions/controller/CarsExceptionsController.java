@@ -13,6 +13,7 @@ import org.springframework.web.method.annotation.MethodArgumentTypeMismatchExcep
 
 import lombok.extern.slf4j.Slf4j;
 import telran.cars.exceptions.NotFoundException;
+import telran.cars.exceptions.TradeDealConflictException;
 
 @ControllerAdvice
 @Slf4j
@@ -31,6 +32,11 @@ public class CarsExceptionsController {
 		return returnResponse(e.getMessage(), HttpStatus.NOT_FOUND);
 	}
 
+	@ExceptionHandler(TradeDealConflictException.class)
+	ResponseEntity<String> conflictHandler(TradeDealConflictException e) {
+		return returnResponse(e.getMessage(), HttpStatus.CONFLICT);
+	}
+
 	@ExceptionHandler({ IllegalStateException.class, IllegalArgumentException.class })
 	ResponseEntity<String> illegalStateHandler(RuntimeException e) {
 		return returnResponse(e.getMessage(), HttpStatus.BAD_REQUEST);
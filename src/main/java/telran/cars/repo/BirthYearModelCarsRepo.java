@@ -0,0 +1,52 @@
+package telran.cars.repo;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import telran.cars.dto.*;
+import telran.cars.service.model.*;
+
+public interface BirthYearModelCarsRepo
+		extends JpaRepository<BirthYearModelCars, BirthYearModel>, BirthYearModelCarsUpserts {
+	// decrements the counters of the existing buckets, the cars are added by the upsert
+	@Modifying
+	@Query("""
+			update BirthYearModelCars bymc set bymc.carsCount = bymc.carsCount + :delta
+			where bymc.birthYearModel.birthYear = :birthYear and bymc.birthYearModel.modelName = :modelName
+			and bymc.birthYearModel.modelYear = :modelYear
+			""")
+	int increment(int birthYear, String modelName, int modelYear, long delta);
+
+	@Query("""
+			select bymc.birthYearModel.modelName as name, sum(bymc.carsCount) as amount from BirthYearModelCars bymc
+			where bymc.birthYearModel.birthYear between :fromYear and :toYear and bymc.carsCount > 0
+			group by bymc.birthYearModel.modelName
+			""")
+	List<ModelNameAmount> findModelNameAmounts(int fromYear, int toYear);
+
+	// one row per birth year having cars
+	@Query("""
+			select min(model.enginePower) as power, min(model.engineCapacity) as capacity
+			from BirthYearModelCars bymc join Model model
+			on model.modelYear.name = bymc.birthYearModel.modelName and model.modelYear.year = bymc.birthYearModel.modelYear
+			where bymc.birthYearModel.birthYear between :fromYear and :toYear and bymc.carsCount > 0
+			group by bymc.birthYearModel.birthYear
+			""")
+	List<EnginePowerCapacity> findMinPowerCapacities(int fromYear, int toYear);
+
+	@Modifying
+	@Query("delete from BirthYearModelCars")
+	void deleteAllBirthYearModelCars();
+
+	@Modifying
+	@Query(value = """
+			insert into birth_year_model_cars (birth_year, model_name, model_year, cars_count)
+			select extract(year from o.birth_date), c.model_name, c.model_year, count(*)
+			from cars c join car_owners o on c.owner_id = o.id
+			group by extract(year from o.birth_date), c.model_name, c.model_year
+			""", nativeQuery = true)
+	int insertBirthYearModelCarsFromBaseTables();
+}
@@ -0,0 +1,9 @@
+package telran.cars.repo;
+
+import java.time.LocalDate;
+
+import telran.cars.service.model.ModelYear;
+
+public interface BirthYearModelCarsUpserts {
+	void addCars(LocalDate birthDate, ModelYear modelYear, long delta);
+}
@@ -0,0 +1,30 @@
+package telran.cars.repo;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import lombok.RequiredArgsConstructor;
+import telran.cars.service.model.*;
+
+@RequiredArgsConstructor
+class BirthYearModelCarsUpsertsImpl implements BirthYearModelCarsUpserts {
+	final CounterUpserts counterUpserts;
+
+	@Override
+	public void addCars(LocalDate birthDate, ModelYear modelYear, long delta) {
+		counterUpserts.upsert(BirthYearModelCars.class, """
+				insert into birth_year_model_cars (birth_year, model_name, model_year, cars_count)
+				values (:birthYear, :modelName, :modelYear, :delta) on conflict (birth_year, model_name, model_year)
+				do update set cars_count = birth_year_model_cars.cars_count + excluded.cars_count
+				""", """
+				merge into birth_year_model_cars bymc using (values (cast(:birthYear as integer),
+				cast(:modelName as varchar(255)), cast(:modelYear as integer), cast(:delta as bigint)))
+				d (birth_year, model_name, model_year, cars_count)
+				on bymc.birth_year = d.birth_year and bymc.model_name = d.model_name and bymc.model_year = d.model_year
+				when matched then update set cars_count = bymc.cars_count + d.cars_count
+				when not matched then insert (birth_year, model_name, model_year, cars_count)
+				values (d.birth_year, d.model_name, d.model_year, d.cars_count)
+				""", Map.of("birthYear", birthDate.getYear(), "modelName", modelYear.getName(), "modelYear",
+				modelYear.getYear(), "delta", delta));
+	}
+}
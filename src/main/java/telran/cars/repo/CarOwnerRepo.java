@@ -1,9 +1,76 @@
 package telran.cars.repo;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import jakarta.persistence.QueryHint;
 
 import telran.cars.service.model.*;
 
+/**
+ * The version column is the change counter of an owner and of the owner's
+ * cars, it isn't mapped by the entity. Its updates are synchronized with a
+ * space of their own, so they don't evict the cached owners
+ */
 public interface CarOwnerRepo extends JpaRepository<CarOwner, Long> {
+	String VERSION_SPACE = "car_owners_version";
+	String ARCHIVE_SPACE = "car_owners_archive";
+
+	@Query("select owner.id from CarOwner owner where owner.id in :ids")
+	List<Long> findExistingIds(Collection<Long> ids);
+
+	@Query(value = "select version from car_owners where id = :id", nativeQuery = true)
+	Optional<Long> findVersionById(long id);
+
+	@Modifying
+	@Query(value = "update car_owners set version = version + 1 where id in :ids", nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = VERSION_SPACE))
+	int incrementVersions(Collection<Long> ids);
+
+	@Modifying
+	@Query(value = """
+			update car_owners set version = version + 1
+			where id in (select c.owner_id from cars c where c.car_number in :carNumbers)
+			""", nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = VERSION_SPACE))
+	int incrementVersionsByCarNumbers(Collection<String> carNumbers);
+
+	// owners of the cars having trade deals with ID not less than a given one
+	@Modifying
+	@Query(value = """
+			update car_owners set version = version + 1 where id in (select c.owner_id from cars c
+			where c.car_number in (select td.car_number from trade_deals td where td.id >= :fromDealId))
+			""", nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = VERSION_SPACE))
+	int incrementVersionsByDeals(long fromDealId);
+
+	@Query(value = """
+			select o.id from car_owners o where not exists (select 1 from cars c where c.owner_id = o.id)
+			order by o.id for update
+			""", nativeQuery = true)
+	List<Long> findIdsWithoutCarsForUpdate();
+
+	@Modifying
+	@Query(value = """
+			insert into car_owners_archive (id, name, email, birth_date, archived_at)
+			select id, name, email, birth_date, :archivedAt from car_owners where id in :ids
+			""", nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = ARCHIVE_SPACE))
+	int archiveByIds(Collection<Long> ids, LocalDateTime archivedAt);
 
-}
\ No newline at end of file
+	// the owners having got a car since they have been selected are kept
+	@Modifying
+	@Query("""
+			delete from CarOwner owner where owner.id in :ids
+			and not exists (select car.number from Car car where car.carOwner = owner)
+			""")
+	int deleteWithoutCarsByIds(Collection<Long> ids);
+}
@@ -1,26 +1,136 @@
 package telran.cars.repo;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
-import telran.cars.dto.EnginePowerCapacity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import telran.cars.dto.*;
 import telran.cars.service.model.*;
 
 public interface CarRepo extends JpaRepository<Car, String> {
+	String ARCHIVE_SPACE = "cars_archive";
+
+	// explicit query filters by the foreign key, derived one joins car_owners
+	@Query("select car from Car car where car.carOwner.id = :id")
 	List<Car> findByCarOwnerId(long id);
 
+	@Query("""
+			select new telran.cars.dto.CarDto(car.number, car.model.modelYear.name, car.model.modelYear.year,
+			car.color, car.kilometers, car.state) from Car car where car.carOwner.id = :id order by car.number
+			""")
+	List<CarDto> findCarDtosByOwnerId(long id);
+
+	@Query("""
+			select new telran.cars.dto.CarDto(car.number, car.model.modelYear.name, car.model.modelYear.year,
+			car.color, car.kilometers, car.state) from Car car where car.carOwner.id = :id and car.number > :after
+			order by car.number limit :limit
+			""")
+	List<CarDto> findCarDtosByOwnerIdAfter(long id, String after, int limit);
+
+	/**
+	 * returns empty Optional for not existing car and PersonDto having only null
+	 * fields for car without owner
+	 */
+	@Query("""
+			select new telran.cars.dto.PersonDto(owner.id, owner.name, cast(owner.birthDate as String), owner.email)
+			from Car car left join car.carOwner owner where car.number = :carNumber
+			""")
+	Optional<PersonDto> findOwnerDtoByCarNumber(String carNumber);
+
+	@Query(value = """
+			select c.version as "carVersion", o.id as "ownerId", o.version as "ownerVersion"
+			from cars c left join car_owners o on c.owner_id = o.id where c.car_number = :carNumber
+			""", nativeQuery = true)
+	Optional<CarOwnerVersion> findCarOwnerVersion(String carNumber);
+
+	@Query("""
+			select car.number as number, owner.id as id, owner.name as name, owner.birthDate as birthDate,
+			owner.email as email from Car car left join car.carOwner owner where car.number in :numbers
+			""")
+	List<CarNumberOwner> findCarOwnersByNumbers(Collection<String> numbers);
+
+	// rows are locked in the order of the car numbers
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select car from Car car where car.number in :numbers order by car.number")
+	List<Car> findByNumbersForUpdate(Collection<String> numbers);
+
+	@Query(value = """
+			select car_number from cars where model_name = :modelName and model_year = :modelYear
+			order by car_number for update
+			""", nativeQuery = true)
+	List<String> findNumbersByModelForUpdate(String modelName, int modelYear);
+
+	// owned cars of the given numbers per birth year of the owners
+	@Query("""
+			select year(owner.birthDate) as year, count(*) as count from Car car join car.carOwner owner
+			where car.number in :numbers group by year(owner.birthDate)
+			""")
+	List<BirthYearCount> countByNumbersGroupByOwnerBirthYear(Collection<String> numbers);
+
+	@Modifying
+	@Query(value = """
+			insert into cars_archive (car_number, model_name, model_year, owner_id, color, kilometers, car_state,
+			archived_at) select car_number, model_name, model_year, owner_id, color, kilometers, car_state, :archivedAt
+			from cars where car_number in :numbers
+			""", nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = ARCHIVE_SPACE))
+	int archiveByNumbers(Collection<String> numbers, LocalDateTime archivedAt);
+
+	// trade deals of the cars are deleted by the cascade
+	@Modifying
+	@Query("delete from Car car where car.number in :numbers")
+	int deleteByNumbers(Collection<String> numbers);
+
+	@Query("select car.number from Car car where car.number in :numbers")
+	List<String> findExistingNumbers(Collection<String> numbers);
+
+	@Query("select car.number as number, car.model.modelYear.name as modelName from Car car where car.number in :numbers")
+	List<CarModelName> findModelNames(Collection<String> numbers);
+
 	@Query(value = """
 			select car.color from Car car where model.modelYear.name = :model
 			group by color order by count(*) desc, car.color asc limit 1
 			""", nativeQuery = false)
 	String findOneMostPopularColorModel(String model);
 
+	// one row per birth year having cars
 	@Query("""
 			select min(car.model.enginePower) as power, min(car.model.engineCapacity) as capacity
 			from Car car where carOwner.birthDate between :birthDateFrom and :birthDateTo
+			group by year(carOwner.birthDate)
 			""")
-	EnginePowerCapacity findMinPowerCapacityOwnerBirthDates(LocalDate birthDateFrom, LocalDate birthDateTo);
+	List<EnginePowerCapacity> findMinPowerCapacitiesOwnerBirthDates(LocalDate birthDateFrom, LocalDate birthDateTo);
+
+	// all cars with birth dates of their owners, for the in-memory fleet snapshot
+	@Query("""
+			select car.number as number, car.model.modelYear.name as modelName, car.model.modelYear.year as modelYear,
+			owner.id as ownerId, owner.birthDate as birthDate, car.kilometers as kilometers, car.color as color,
+			car.state as state, car.version as version from Car car left join car.carOwner owner
+			""")
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+	Stream<FleetCar> streamFleetCars();
+
+	/**
+	 * sets owner of each car having trade deals with ID not less than a given one
+	 * to the owner of its latest trade deal
+	 */
+	@Modifying
+	@Query(value = """
+			update cars set version = version + 1, owner_id = (select td.owner_id from trade_deals td
+			where td.car_number = cars.car_number order by td.date desc, td.id desc limit 1)
+			where car_number in (select td.car_number from trade_deals td where td.id >= :fromDealId)
+			""", nativeQuery = true)
+	int updateOwnersByLatestDeals(long fromDealId);
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package telran.cars.repo;
+
+import java.util.Map;
+
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Adds the deltas to the counters of an aggregate table by one statement that
+ * inserts the counter row missing for the key, so the transactions creating the
+ * first counter of a key concurrently don't fail on the primary key. PostgreSQL
+ * upserts by insert on conflict, the other databases by merge
+ */
+@Component
+@RequiredArgsConstructor
+class CounterUpserts {
+	final EntityManager em;
+	private volatile Boolean onConflict;
+
+	int upsert(Class<?> entityClass, String onConflictSql, String mergeSql, Map<String, Object> parameters) {
+		Query query = em.createNativeQuery(isOnConflict() ? onConflictSql : mergeSql);
+		// only the counters table is flushed and invalidated, not the whole second-level cache
+		query.unwrap(NativeQuery.class).addSynchronizedEntityClass(entityClass);
+		parameters.forEach(query::setParameter);
+		return query.executeUpdate();
+	}
+
+	private boolean isOnConflict() {
+		if (onConflict == null) {
+			onConflict = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class).getJdbcServices()
+					.getDialect() instanceof PostgreSQLDialect;
+		}
+		return onConflict;
+	}
+}
@@ -0,0 +1,39 @@
+package telran.cars.repo;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import telran.cars.dto.ModelNameAmount;
+import telran.cars.service.model.*;
+
+public interface ModelCounterRepo extends JpaRepository<ModelCounter, String>, ModelCounterUpserts {
+	@Query("""
+			select counter.name from ModelCounter counter where counter.dealsCount > 0
+			and counter.dealsCount = (select max(c.dealsCount) from ModelCounter c) order by counter.name
+			""")
+	List<String> findMostSoldModelNames();
+
+	@Query("""
+			select counter.name as name, counter.carsCount as amount from ModelCounter counter
+			where counter.carsCount > 0 order by counter.carsCount desc, counter.name limit :nModels
+			""")
+	List<ModelNameAmount> findMostPopularModelNames(int nModels);
+
+	@Modifying
+	@Query("delete from ModelCounter")
+	void deleteAllCounters();
+
+	@Modifying
+	@Query(value = """
+			insert into model_counters (model_name, cars_count, deals_count)
+			select m.model_name,
+			(select count(*) from cars c where c.model_name = m.model_name),
+			(select count(*) from trade_deals td join cars c on td.car_number = c.car_number
+			where c.model_name = m.model_name)
+			from (select distinct model_name from models) m
+			""", nativeQuery = true)
+	int insertCountersFromBaseTables();
+}
@@ -0,0 +1,5 @@
+package telran.cars.repo;
+
+public interface ModelCounterUpserts {
+	void addCounts(String modelName, long carsDelta, long dealsDelta);
+}
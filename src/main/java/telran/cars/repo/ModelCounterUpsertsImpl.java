@@ -0,0 +1,29 @@
+package telran.cars.repo;
+
+import java.util.Map;
+
+import lombok.RequiredArgsConstructor;
+import telran.cars.service.model.ModelCounter;
+
+@RequiredArgsConstructor
+class ModelCounterUpsertsImpl implements ModelCounterUpserts {
+	final CounterUpserts counterUpserts;
+
+	@Override
+	public void addCounts(String modelName, long carsDelta, long dealsDelta) {
+		counterUpserts.upsert(ModelCounter.class, """
+				insert into model_counters (model_name, cars_count, deals_count)
+				values (:modelName, :carsDelta, :dealsDelta) on conflict (model_name) do update
+				set cars_count = model_counters.cars_count + excluded.cars_count,
+				deals_count = model_counters.deals_count + excluded.deals_count
+				""", """
+				merge into model_counters mc using (values (cast(:modelName as varchar(255)),
+				cast(:carsDelta as bigint), cast(:dealsDelta as bigint))) d (model_name, cars_count, deals_count)
+				on mc.model_name = d.model_name
+				when matched then update set cars_count = mc.cars_count + d.cars_count,
+				deals_count = mc.deals_count + d.deals_count
+				when not matched then insert (model_name, cars_count, deals_count)
+				values (d.model_name, d.cars_count, d.deals_count)
+				""", Map.of("modelName", modelName, "carsDelta", carsDelta, "dealsDelta", dealsDelta));
+	}
+}
@@ -0,0 +1,45 @@
+package telran.cars.repo;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import telran.cars.service.model.*;
+
+public interface ModelMonthDealsRepo extends JpaRepository<ModelMonthDeals, ModelMonth>, ModelMonthDealsUpserts {
+	// decrements the counters of the existing months, the deals are added by the upsert
+	@Modifying
+	@Query("""
+			update ModelMonthDeals mmd set mmd.dealsCount = mmd.dealsCount + :delta
+			where mmd.modelMonth.name = :modelName and mmd.modelMonth.year = :year and mmd.modelMonth.month = :month
+			""")
+	int increment(String modelName, int year, int month, long delta);
+
+	/**
+	 * months are numbered as year * 12 + month, the years range is the index range
+	 * of the months range
+	 */
+	@Query("""
+			select mmd from ModelMonthDeals mmd where mmd.modelMonth.name in :modelNames
+			and mmd.modelMonth.year between :fromYear and :toYear
+			and mmd.modelMonth.year * 12 + mmd.modelMonth.month between :fromMonth and :toMonth
+			""")
+	List<ModelMonthDeals> findByModelNamesMonths(Collection<String> modelNames, int fromYear, int toYear,
+			int fromMonth, int toMonth);
+
+	@Modifying
+	@Query("delete from ModelMonthDeals")
+	void deleteAllMonthDeals();
+
+	@Modifying
+	@Query(value = """
+			insert into model_month_deals (model_name, deal_year, deal_month, deals_count)
+			select c.model_name, extract(year from td.date), extract(month from td.date), count(*)
+			from trade_deals td join cars c on td.car_number = c.car_number where td.date is not null
+			group by c.model_name, extract(year from td.date), extract(month from td.date)
+			""", nativeQuery = true)
+	int insertMonthDealsFromBaseTables();
+}
@@ -0,0 +1,7 @@
+package telran.cars.repo;
+
+import java.time.LocalDate;
+
+public interface ModelMonthDealsUpserts {
+	void addDeals(String modelName, LocalDate date, long delta);
+}
@@ -0,0 +1,29 @@
+package telran.cars.repo;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import lombok.RequiredArgsConstructor;
+import telran.cars.service.model.ModelMonthDeals;
+
+@RequiredArgsConstructor
+class ModelMonthDealsUpsertsImpl implements ModelMonthDealsUpserts {
+	final CounterUpserts counterUpserts;
+
+	@Override
+	public void addDeals(String modelName, LocalDate date, long delta) {
+		counterUpserts.upsert(ModelMonthDeals.class, """
+				insert into model_month_deals (model_name, deal_year, deal_month, deals_count)
+				values (:modelName, :year, :month, :delta) on conflict (model_name, deal_year, deal_month) do update
+				set deals_count = model_month_deals.deals_count + excluded.deals_count
+				""", """
+				merge into model_month_deals mmd using (values (cast(:modelName as varchar(255)), cast(:year as integer),
+				cast(:month as integer), cast(:delta as bigint))) d (model_name, deal_year, deal_month, deals_count)
+				on mmd.model_name = d.model_name and mmd.deal_year = d.deal_year and mmd.deal_month = d.deal_month
+				when matched then update set deals_count = mmd.deals_count + d.deals_count
+				when not matched then insert (model_name, deal_year, deal_month, deals_count)
+				values (d.model_name, d.deal_year, d.deal_month, d.deals_count)
+				""", Map.of("modelName", modelName, "year", date.getYear(), "month", date.getMonthValue(), "delta",
+				delta));
+	}
+}
@@ -1,33 +1,29 @@
 package telran.cars.repo;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import jakarta.persistence.QueryHint;
 
 import telran.cars.dto.ModelNameAmount;
 import telran.cars.service.model.*;
 
+// results of the queries are cached until a write to any of their tables
 public interface ModelRepo extends JpaRepository<Model, ModelYear> {
-	@Query("""
-			select car.model.modelYear.name as name from TradeDeal group by car.model.modelYear.name having count(*) =
-			(select max(count) from 
-			(select count(*) as count from TradeDeal 
-			group by car.model.modelYear.name))
-			""")
-	List<String> findMostSoldModelNames();
-
-	@Query("""
-			select model.modelYear.name as name, count(*) as amount
-			from Cars group by model.modelYear.name order by count(*) desc limit :nModels
-			""")
-	List<ModelNameAmount> findMostPopularModelNames(int nModels);
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+	List<Model> findByModelYearNameIn(Collection<String> names);
 
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	@Query("""
 			select model.modelYear.name as name, count(*) as amount
 			from Car where carOwner.birthDate between :birthDateFrom and :birthDateTo
-			group by model.modelYear.name order by count(*) desc limit :nModels
+			group by model.modelYear.name
 			""")
-	List<ModelNameAmount> findPopularModelNameOwnerAges(int nModels, LocalDate birthDateFrom, LocalDate birthDateTo);
+	List<ModelNameAmount> findModelNameAmountsOwnerBirthDates(LocalDate birthDateFrom, LocalDate birthDateTo);
 }
\ No newline at end of file
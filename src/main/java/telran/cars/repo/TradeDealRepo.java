@@ -1,16 +1,87 @@
 package telran.cars.repo;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import jakarta.persistence.QueryHint;
+
+import telran.cars.dto.*;
 import telran.cars.service.model.*;
 
 public interface TradeDealRepo extends JpaRepository<TradeDeal, Long> {
+	String ARCHIVE_SPACE = "trade_deals_archive";
+
+	// explicit queries filter by the foreign keys, derived ones join cars and car_owners
+	@Query("select td from TradeDeal td where td.car.number = :carNumber")
 	List<TradeDeal> findByCarNumber(String carNumber);
 
+	long countByCarNumber(String carNumber);
+
+	@Query("""
+			select year(td.date) as year, month(td.date) as month, count(*) as count from TradeDeal td
+			where td.car.number = :carNumber and td.date is not null group by year(td.date), month(td.date)
+			""")
+	List<MonthDealsCount> countByCarNumberGroupByMonth(String carNumber);
+
+	@Query("select count(*) from TradeDeal td where td.car.number in :carNumbers")
+	long countByCarNumbers(Collection<String> carNumbers);
+
+	@Query("""
+			select year(td.date) as year, month(td.date) as month, count(*) as count from TradeDeal td
+			where td.car.number in :carNumbers and td.date is not null group by year(td.date), month(td.date)
+			""")
+	List<MonthDealsCount> countByCarNumbersGroupByMonth(Collection<String> carNumbers);
+
+	@Query("select count(*) from TradeDeal td where td.carOwner.id in :ids")
+	long countByCarOwnerIds(Collection<Long> ids);
+
+	@Modifying
+	@Query(value = """
+			insert into trade_deals_archive (id, car_number, owner_id, date, archived_at)
+			select id, car_number, owner_id, date, :archivedAt from trade_deals where car_number in :carNumbers
+			""", nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = ARCHIVE_SPACE))
+	int archiveByCarNumbers(Collection<String> carNumbers, LocalDateTime archivedAt);
+
+	@Query("select td from TradeDeal td where td.carOwner.id = :id")
 	List<TradeDeal> findByCarOwnerId(long id);
 
 	long countByCarModelModelYearNameAndDateBetween(String modelName, LocalDate date1, LocalDate date2);
+
+	// histories are read from the covering indexes of (car_number, date) and (owner_id, date), the owner ID
+	// is the foreign key column, so deals without owner are kept and car_owners isn't joined
+	@Query("""
+			select new telran.cars.dto.TradeDealHistoryDto(td.id, td.car.number, td.carOwner.id, cast(td.date as String))
+			from TradeDeal td where td.car.number = :carNumber order by td.date, td.id
+			""")
+	List<TradeDealHistoryDto> findHistoryByCarNumber(String carNumber);
+
+	@Query("""
+			select new telran.cars.dto.TradeDealHistoryDto(td.id, td.car.number, td.carOwner.id, cast(td.date as String))
+			from TradeDeal td where td.carOwner.id = :personId order by td.date, td.id
+			""")
+	List<TradeDealHistoryDto> findHistoryByOwnerId(long personId);
+
+	// the conjunct td.date >= :date starts the index range at the date of the last deal of the previous page
+	@Query("""
+			select new telran.cars.dto.TradeDealHistoryDto(td.id, td.car.number, td.carOwner.id, cast(td.date as String))
+			from TradeDeal td where td.car.number = :carNumber
+			and td.date >= :date and (td.date > :date or td.id > :id) order by td.date, td.id limit :limit
+			""")
+	List<TradeDealHistoryDto> findHistoryByCarNumberAfter(String carNumber, LocalDate date, long id, int limit);
+
+	@Query("""
+			select new telran.cars.dto.TradeDealHistoryDto(td.id, td.car.number, td.carOwner.id, cast(td.date as String))
+			from TradeDeal td where td.carOwner.id = :personId
+			and td.date >= :date and (td.date > :date or td.id > :id) order by td.date, td.id limit :limit
+			""")
+	List<TradeDealHistoryDto> findHistoryByOwnerIdAfter(long personId, LocalDate date, long id, int limit);
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package telran.cars.repo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import telran.cars.service.model.*;
+
+public interface TradeDealsImportRepo extends JpaRepository<TradeDealsImport, String> {
+
+}
@@ -0,0 +1,51 @@
+package telran.cars.service;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import telran.cars.dto.CacheStatsDto;
+
+/**
+ * Hits, misses, hit ratios and sizes of the in-process caches (models catalog,
+ * ad-hoc query templates and regions of the second-level cache) tagged with
+ * the cache name
+ */
+@Component
+@RequiredArgsConstructor
+public class CachesMetrics implements MeterBinder {
+	final ModelsCache modelsCache;
+	final QueryTemplates queryTemplates;
+	final EntityCaches entityCaches;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		bindCache(registry, "models", modelsCache, ModelsCache::getStats);
+		bindCache(registry, "query-templates", queryTemplates, QueryTemplates::getStats);
+		entityCaches.getRegionNames().forEach(region -> bindCache(registry, region, entityCaches,
+				caches -> caches.getStats(region)));
+	}
+
+	private <T> void bindCache(MeterRegistry registry, String name, T cache,
+			Function<T, CacheStatsDto> stats) {
+		FunctionCounter.builder("cars.cache.hits", cache, statsValue(stats, CacheStatsDto::hits)).tag("cache", name)
+				.register(registry);
+		FunctionCounter.builder("cars.cache.misses", cache, statsValue(stats, CacheStatsDto::misses))
+				.tag("cache", name).register(registry);
+		Gauge.builder("cars.cache.size", cache, statsValue(stats, CacheStatsDto::size)).tag("cache", name)
+				.register(registry);
+		Gauge.builder("cars.cache.hit.ratio", cache, statsValue(stats, CacheStatsDto::hitRatio)).tag("cache", name)
+				.register(registry);
+	}
+
+	private static <T> ToDoubleFunction<T> statsValue(Function<T, CacheStatsDto> stats,
+			ToDoubleFunction<CacheStatsDto> value) {
+		return cache -> value.applyAsDouble(stats.apply(cache));
+	}
+}
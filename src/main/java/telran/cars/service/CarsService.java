@@ -1,6 +1,9 @@
 package telran.cars.service;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import telran.cars.dto.*;
 
@@ -15,14 +18,43 @@ public interface CarsService {
 
 	CarDto deleteCar(String carNumber);
 
+	// removed rows are copied to the archive tables if archive is true
+	BulkDeleteDto deleteModelCars(String modelName, int modelYear, boolean archive);
+
+	BulkDeleteDto deleteOwnersWithoutCars(boolean archive);
+
 	ModelDto addModel(ModelDto modelDto);
 
 	TradeDealDto purchase(TradeDealDto tradeDeal);
 
+	// all trade deals of the list are applied in one transaction or none of them
+	List<TradeDealDto> purchaseAll(List<TradeDealDto> tradeDeals);
+
+	// all cars of the person, unbounded: internal use only, the cars are served to the clients by getOwnerCarsPage
 	List<CarDto> getOwnerCars(long id);
 
 	PersonDto getCarOwner(String carNumber);
 
+	// owners of the given cars by car number in the order of the list, not found cars are reported in the results
+	Map<String, CarOwnerResultDto> getCarOwners(List<String> carNumbers);
+
+	// Entity tags of the representations above, null for not existing car or person
+	String getOwnerCarsETag(long id);
+
+	String getCarOwnerETag(String carNumber);
+
+	// Keyset paginated listings, null page token means the first page
+	PageDto<CarDto> getOwnerCarsPage(long id, String pageToken, int pageSize);
+
+	PageDto<TradeDealHistoryDto> getCarTradeDeals(String carNumber, String pageToken, int pageSize);
+
+	PageDto<TradeDealHistoryDto> getOwnerTradeDeals(long id, String pageToken, int pageSize);
+
+	// Whole trade deals histories ordered by date
+	List<TradeDealHistoryDto> getCarHistory(String carNumber);
+
+	List<TradeDealHistoryDto> getOwnerHistory(long id);
+
 	List<String> mostSoldModelNames();
 
 	List<ModelNameAmount> mostPopularModelNames(int nModels);// most popular model names according to number of cars
@@ -31,6 +63,9 @@ public interface CarsService {
 
 	long countTradeDealAtMonthModel(String modelName, int month, int year);
 
+	// monthly trade deals counts of each given model name in the months range (YYYY-MM)
+	List<ModelDealsHistogramDto> tradeDealsHistogram(List<String> modelNames, String fromMonth, String toMonth);
+
 	List<ModelNameAmount> mostPopularModelNameByOwnerAges(int nModels, int ageFrom, int ageTo);
 
 	String oneMostPopularColorModel(String model);
@@ -39,4 +74,32 @@ public interface CarsService {
 
 	// CW #65
 	List<String> anyQuery(QueryDto queryDto);
+
+	// passes rows of the query result as lists of column values up to the cap of the rows,
+	// returns number of the passed rows and whether the result has been truncated by the cap
+	QueryStreamResultDto anyQueryStream(QueryDto queryDto, Consumer<List<Object>> rowsConsumer);
+
+	CacheStatsDto getQueryTemplatesStats();
+
+	// Bulk ingestion: one result per item in the order of the given list
+	List<BatchItemResultDto> addModels(List<ModelDto> modelDtos);
+
+	List<BatchItemResultDto> addPersons(List<PersonDto> personDtos);
+
+	List<BatchItemResultDto> addCars(List<CarDto> carDtos);
+
+	// Import of trade deals CSV file, resumes an interrupted import of the same name
+	TradeDealsImportDto importTradeDeals(String importName, InputStream input);
+
+	CacheStatsDto getModelsCacheStats();
+
+	// statistics of the second-level cache regions by region name
+	Map<String, CacheStatsDto> getEntityCachesStats();
+
+	// reconciles the counters of cars and trade deals per model name, the monthly trade deals counts
+	// and the owner ages index with the cars and trade deals tables
+	int rebuildModelCounters();
+
+	// compares the in-memory fleet snapshot with the cars table, reloads the snapshot if they differ
+	FleetSnapshotCheckDto checkFleetSnapshot();
 }
\ No newline at end of file
@@ -1,18 +1,39 @@
 package telran.cars.service;
 
+import java.io.InputStream;
 import java.time.LocalDate;
-import java.time.temporal.TemporalAdjusters;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.Temporal;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import jakarta.persistence.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import static telran.cars.api.ServiceExceptionMessages.*;
+import static telran.cars.api.ValidationConstants.MAX_HISTOGRAM_MONTHS;
+import static telran.cars.api.ValidationConstants.WRONG_HISTOGRAM_MONTHS;
+import static telran.cars.api.ValidationConstants.WRONG_MONTH_FORMAT;
 import telran.cars.dto.*;
 import telran.cars.exceptions.*;
 import telran.cars.repo.*;
+import telran.cars.service.events.*;
 import telran.cars.service.model.*;
 
 @Service
@@ -23,7 +44,35 @@ public class CarsServiceImpl implements CarsService {
 	final CarOwnerRepo carOwnerRepo;
 	final ModelRepo modelRepo;
 	final TradeDealRepo tradeDealRepo;
+	final ModelCounterRepo modelCounterRepo;
+	final ModelMonthDealsRepo modelMonthDealsRepo;
 	final EntityManager em;
+	final TradeDealsImporter tradeDealsImporter;
+	final ModelsCache modelsCache;
+	final OwnerAgesIndex ownerAgesIndex;
+	final FleetSnapshot fleetSnapshot;
+	final CarsEvents carsEvents;
+	final EntityCaches entityCaches;
+	final QueryTemplates queryTemplates;
+	final TransactionTemplate transactionTemplate;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+	int batchSize;
+
+	@Value("${app.purchase.max-attempts:5}")
+	int purchaseMaxAttempts;
+
+	@Value("${app.purchase.backoff-millis:10}")
+	long purchaseBackoffMillis;
+
+	@Value("${app.query.fetch-size:500}")
+	int queryFetchSize;
+
+	@Value("${app.query.max-rows:100000}")
+	long queryMaxRows;
+
+	@Value("${app.query.in-list-chunk-size:1000}")
+	int inListChunkSize;
 
 	@Override
 	@Transactional
@@ -33,7 +82,7 @@ public class CarsServiceImpl implements CarsService {
 		}
 		CarOwner carOwner = CarOwner.of(personDto);
 		carOwnerRepo.save(carOwner);
-		log.debug("person {} has been saved", personDto);
+		log.debug("person {} has been saved", personDto.id());
 		return personDto;
 	}
 
@@ -43,12 +92,15 @@ public class CarsServiceImpl implements CarsService {
 		if (carRepo.existsById(carDto.number())) {
 			throw new IllegalCarsStateException();
 		}
-		Model model = modelRepo.findById(new ModelYear(carDto.model(), carDto.year()))
-				.orElseThrow(() -> new ModelNotFoundException());
+		ModelYear modelYear = new ModelYear(carDto.model(), carDto.year());
+		modelsCache.get(modelYear).orElseThrow(() -> new ModelNotFoundException());
 		Car car = Car.of(carDto);
-		car.setModel(model);
-		carRepo.save(car);
-		log.debug("car {} has been saved", carDto);
+		car.setModel(em.getReference(Model.class, modelYear));
+		em.persist(car);
+		modelCounterRepo.addCounts(carDto.model(), 1, 0);
+		fleetSnapshot.putAfterCommit(car, null);
+		carsEvents.publishAfterCommit(CarsEvent.carAdded(carDto.number(), carDto.model()));
+		log.debug("car {} has been saved", carDto.number());
 		return carDto;
 	}
 
@@ -59,6 +111,7 @@ public class CarsServiceImpl implements CarsService {
 		}
 		Model model = Model.of(modelDto);
 		modelRepo.save(model);
+		modelsCache.put(model);
 		log.debug("model {} has been saved", modelDto);
 		return modelDto;
 	}
@@ -68,6 +121,7 @@ public class CarsServiceImpl implements CarsService {
 	public PersonDto updatePerson(PersonDto personDto) {
 		CarOwner carOwner = carOwnerRepo.findById(personDto.id()).orElseThrow(() -> new PersonNotFoundException());
 		carOwner.setEmail(personDto.email());
+		carOwnerRepo.incrementVersions(List.of(carOwner.getId()));
 		return personDto;
 	}
 
@@ -75,7 +129,12 @@ public class CarsServiceImpl implements CarsService {
 	@Transactional
 	public PersonDto deletePerson(long id) {
 		CarOwner carOwner = carOwnerRepo.findById(id).orElseThrow(() -> new PersonNotFoundException());
+		// cars of the person become ownerless by the foreign key
+		List<Car> cars = carRepo.findByCarOwnerId(id);
+		cars.forEach(car -> ownerAgesIndex.addCar(carOwner, car, -1));
 		carOwnerRepo.deleteById(id);
+		entityCaches.evictCarsAfterCommit(cars.stream().map(Car::getNumber).toList());
+		fleetSnapshot.clearOwnerAfterCommit(id);
 		return carOwner.build();
 	}
 
@@ -83,13 +142,129 @@ public class CarsServiceImpl implements CarsService {
 	@Transactional
 	public CarDto deleteCar(String carNumber) {
 		Car car = carRepo.findById(carNumber).orElseThrow(() -> new CarNotFoundException());
+		// trade deals of the car are deleted by the cascade
+		String modelName = car.getModel().getModelYear().getName();
+		modelCounterRepo.addCounts(modelName, -1, -tradeDealRepo.countByCarNumber(carNumber));
+		tradeDealRepo.countByCarNumberGroupByMonth(carNumber).forEach(monthDeals -> modelMonthDealsRepo
+				.increment(modelName, monthDeals.getYear(), monthDeals.getMonth(), -monthDeals.getCount()));
+		ownerAgesIndex.addCar(car.getCarOwner(), car, -1);
+		if (car.getCarOwner() != null) {
+			carOwnerRepo.incrementVersions(List.of(car.getCarOwner().getId()));
+		}
 		carRepo.deleteById(carNumber);
+		fleetSnapshot.removeAfterCommit(carNumber);
+		carsEvents.publishAfterCommit(CarsEvent.carDeleted(carNumber, modelName));
 		return car.build();
 	}
 
+	/**
+	 * The cars of the model are locked and deleted by chunks of their numbers, so
+	 * the cars added concurrently are kept; the trade deals of the cars are
+	 * deleted by the cascade. The counters and the owner ages index are decreased
+	 * by the aggregates of the chunks rather than car by car
+	 */
 	@Override
 	@Transactional
+	public BulkDeleteDto deleteModelCars(String modelName, int modelYear, boolean archive) {
+		ModelYear model = new ModelYear(modelName, modelYear);
+		modelsCache.get(model).orElseThrow(() -> new ModelNotFoundException());
+		List<String> carNumbers = carRepo.findNumbersByModelForUpdate(modelName, modelYear);
+		Map<YearMonth, Long> monthDeals = new HashMap<>();
+		Map<Integer, Long> birthYearCars = new HashMap<>();
+		forEachChunk(carNumbers, numbers -> {
+			tradeDealRepo.countByCarNumbersGroupByMonth(numbers).forEach(count -> monthDeals
+					.merge(YearMonth.of(count.getYear(), count.getMonth()), count.getCount(), Long::sum));
+			carRepo.countByNumbersGroupByOwnerBirthYear(numbers)
+					.forEach(count -> birthYearCars.merge(count.getYear(), count.getCount(), Long::sum));
+			carOwnerRepo.incrementVersionsByCarNumbers(numbers);
+		});
+		long nDeals = sumOfChunks(carNumbers, tradeDealRepo::countByCarNumbers);
+		long nArchived = 0;
+		if (archive) {
+			LocalDateTime archivedAt = LocalDateTime.now();
+			forEachChunk(carNumbers, numbers -> tradeDealRepo.archiveByCarNumbers(numbers, archivedAt));
+			nArchived = sumOfChunks(carNumbers, numbers -> carRepo.archiveByNumbers(numbers, archivedAt));
+		}
+		long nDeleted = sumOfChunks(carNumbers, carRepo::deleteByNumbers);
+		modelCounterRepo.addCounts(modelName, -nDeleted, -nDeals);
+		monthDeals.forEach((month, count) -> modelMonthDealsRepo.increment(modelName, month.getYear(),
+				month.getMonthValue(), -count));
+		birthYearCars.forEach((birthYear, count) -> ownerAgesIndex.removeCars(birthYear, model, count));
+		fleetSnapshot.removeAllAfterCommit(carNumbers);
+		carNumbers.forEach(carNumber -> carsEvents.publishAfterCommit(CarsEvent.carDeleted(carNumber, modelName)));
+		log.debug("{} cars of model {} {} with {} trade deals have been deleted, {} archived", nDeleted, modelName,
+				modelYear, nDeals, nArchived);
+		return new BulkDeleteDto(nDeleted, nDeals, nArchived);
+	}
+
+	/**
+	 * The owners without cars are locked and deleted by chunks of their IDs, the
+	 * owner of their trade deals is set to null by the cascade
+	 */
+	@Override
+	@Transactional
+	public BulkDeleteDto deleteOwnersWithoutCars(boolean archive) {
+		List<Long> ids = carOwnerRepo.findIdsWithoutCarsForUpdate();
+		long nDeals = sumOfChunks(ids, tradeDealRepo::countByCarOwnerIds);
+		long nArchived = 0;
+		if (archive) {
+			LocalDateTime archivedAt = LocalDateTime.now();
+			nArchived = sumOfChunks(ids, chunk -> carOwnerRepo.archiveByIds(chunk, archivedAt));
+		}
+		long nDeleted = sumOfChunks(ids, carOwnerRepo::deleteWithoutCarsByIds);
+		log.debug("{} owners without cars having {} trade deals have been deleted, {} archived", nDeleted, nDeals,
+				nArchived);
+		return new BulkDeleteDto(nDeleted, nDeals, nArchived);
+	}
+
+	/**
+	 * Each attempt runs in its own transaction, the version check of the car
+	 * fails the attempt if the car has been traded concurrently, then the trade
+	 * deal is retried with exponential backoff and random jitter
+	 */
+	@Override
 	public TradeDealDto purchase(TradeDealDto tradeDealDto) {
+		return executeTradeDeals(() -> purchaseAttempt(tradeDealDto), "trade of car " + tradeDealDto.carNumber());
+	}
+
+	/**
+	 * Applies the trade deals in one transaction in the order of the list, so a
+	 * car may be traded several times. The cars are locked in the order of their
+	 * numbers, hence concurrent batches of the same cars wait for each other
+	 * rather than deadlock; the trade deals are inserted by JDBC batches
+	 */
+	@Override
+	public List<TradeDealDto> purchaseAll(List<TradeDealDto> tradeDealDtos) {
+		return executeTradeDeals(() -> purchaseAllAttempt(tradeDealDtos),
+				"batch of %d trade deals".formatted(tradeDealDtos.size()));
+	}
+
+	private <T> T executeTradeDeals(Supplier<T> tradeDeals, String description) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return transactionTemplate.execute(status -> tradeDeals.get());
+			} catch (ConcurrencyFailureException e) {
+				if (attempt >= purchaseMaxAttempts) {
+					log.warn("{} has failed after {} attempts: {}", description, attempt, e.getMessage());
+					throw new TradeDealConflictException();
+				}
+				log.debug("{} conflicts with concurrent trade, attempt {}", description, attempt);
+				backOff(attempt);
+			}
+		}
+	}
+
+	private void backOff(int attempt) {
+		long delay = purchaseBackoffMillis << (attempt - 1);
+		try {
+			Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TradeDealConflictException();
+		}
+	}
+
+	private TradeDealDto purchaseAttempt(TradeDealDto tradeDealDto) {
 		Car car = carRepo.findById(tradeDealDto.carNumber()).orElseThrow(() -> new CarNotFoundException());
 		CarOwner oldCarOwner = car.getCarOwner();
 		CarOwner newCarOwner = null;
@@ -97,46 +272,228 @@ public class CarsServiceImpl implements CarsService {
 		if (personId != null) {
 			log.debug("ID of new car's owner is {}", personId);
 			newCarOwner = carOwnerRepo.findById(personId).orElseThrow(() -> new PersonNotFoundException());
-			if (oldCarOwner != null && oldCarOwner.getId() == personId) {
-				throw new TradeDealIllegalStateException();
+		}
+		checkTradeDeal(oldCarOwner, personId);
+		TradeDeal tradeDeal = applyTradeDeal(car, newCarOwner, LocalDate.parse(tradeDealDto.date()));
+		tradeDealRepo.save(tradeDeal);
+		String modelName = car.getModel().getModelYear().getName();
+		modelCounterRepo.addCounts(modelName, 0, 1);
+		modelMonthDealsRepo.addDeals(modelName, tradeDeal.getDate(), 1);
+		carOwnerRepo.incrementVersions(Stream.of(oldCarOwner, newCarOwner).filter(Objects::nonNull)
+				.map(CarOwner::getId).toList());
+		log.debug("trade deal of car {} has been saved", tradeDealDto.carNumber());
+		return tradeDealDto;
+	}
+
+	private List<TradeDealDto> purchaseAllAttempt(List<TradeDealDto> tradeDealDtos) {
+		Map<String, Car> cars = new HashMap<>();
+		forEachChunk(tradeDealDtos.stream().map(TradeDealDto::carNumber).distinct().sorted().toList(),
+				numbers -> carRepo.findByNumbersForUpdate(numbers).forEach(car -> cars.put(car.getNumber(), car)));
+		Map<Long, CarOwner> carOwners = new HashMap<>();
+		forEachChunk(tradeDealDtos.stream().map(TradeDealDto::personId).filter(Objects::nonNull).distinct().toList(),
+				ids -> carOwnerRepo.findAllById(ids).forEach(carOwner -> carOwners.put(carOwner.getId(), carOwner)));
+		List<TradeDeal> tradeDeals = new ArrayList<>(tradeDealDtos.size());
+		Set<Long> changedOwnerIds = new HashSet<>();
+		Map<String, Long> modelDeals = new HashMap<>();
+		Map<String, Map<YearMonth, Long>> modelMonthDeals = new HashMap<>();
+		for (TradeDealDto tradeDealDto : tradeDealDtos) {
+			Car car = cars.get(tradeDealDto.carNumber());
+			if (car == null) {
+				throw new CarNotFoundException();
 			}
-		} else if (oldCarOwner == null) {
+			CarOwner oldCarOwner = car.getCarOwner();
+			CarOwner newCarOwner = null;
+			Long personId = tradeDealDto.personId();
+			if (personId != null) {
+				newCarOwner = carOwners.get(personId);
+				if (newCarOwner == null) {
+					throw new PersonNotFoundException();
+				}
+			}
+			checkTradeDeal(oldCarOwner, personId);
+			TradeDeal tradeDeal = applyTradeDeal(car, newCarOwner, LocalDate.parse(tradeDealDto.date()));
+			tradeDeals.add(tradeDeal);
+			Stream.of(oldCarOwner, newCarOwner).filter(Objects::nonNull).map(CarOwner::getId)
+					.forEach(changedOwnerIds::add);
+			String modelName = car.getModel().getModelYear().getName();
+			modelDeals.merge(modelName, 1l, Long::sum);
+			modelMonthDeals.computeIfAbsent(modelName, name -> new HashMap<>())
+					.merge(YearMonth.from(tradeDeal.getDate()), 1l, Long::sum);
+		}
+		persistInBatches(tradeDeals);
+		modelDeals.forEach((modelName, count) -> modelCounterRepo.addCounts(modelName, 0, count));
+		modelMonthDeals.forEach((modelName, months) -> months.forEach(
+				(month, count) -> modelMonthDealsRepo.addDeals(modelName, month.atDay(1), count)));
+		forEachChunk(List.copyOf(changedOwnerIds), carOwnerRepo::incrementVersions);
+		log.debug("{} trade deals of {} cars have been saved", tradeDeals.size(), cars.size());
+		return tradeDealDtos;
+	}
+
+	// a car can't be traded to its owner, a car without owner can't be traded to nobody
+	private void checkTradeDeal(CarOwner oldCarOwner, Long personId) {
+		if (personId != null ? oldCarOwner != null && Objects.equals(oldCarOwner.getId(), personId)
+				: oldCarOwner == null) {
 			throw new TradeDealIllegalStateException();
 		}
+	}
+
+	/**
+	 * changes the owner of the car, adjusts the owner ages index and schedules
+	 * the after commit updates; returns the new trade deal to be persisted
+	 */
+	private TradeDeal applyTradeDeal(Car car, CarOwner newCarOwner, LocalDate date) {
+		CarOwner oldCarOwner = car.getCarOwner();
 		TradeDeal tradeDeal = new TradeDeal();
 		tradeDeal.setCar(car);
 		tradeDeal.setCarOwner(newCarOwner);
-		tradeDeal.setDate(LocalDate.parse(tradeDealDto.date()));
+		tradeDeal.setDate(date);
 		car.setCarOwner(newCarOwner);
-		tradeDealRepo.save(tradeDeal);
-		log.debug("trade: {} has been saved", tradeDealDto);
-		return tradeDealDto;
+		ownerAgesIndex.addCar(oldCarOwner, car, -1);
+		ownerAgesIndex.addCar(newCarOwner, car, 1);
+		fleetSnapshot.putAfterCommit(car, newCarOwner);
+		carsEvents.publishAfterCommit(
+				CarsEvent.tradeDeal(car.getNumber(), newCarOwner == null ? null : newCarOwner.getId(), date));
+		return tradeDeal;
+	}
+
+	// IN lists of at most app.query.in-list-chunk-size parameters
+	private <T> void forEachChunk(List<T> items, Consumer<List<T>> action) {
+		for (int from = 0; from < items.size(); from += inListChunkSize) {
+			action.accept(items.subList(from, Math.min(items.size(), from + inListChunkSize)));
+		}
+	}
+
+	private <T> long sumOfChunks(List<T> items, ToLongFunction<List<T>> count) {
+		long res = 0;
+		for (int from = 0; from < items.size(); from += inListChunkSize) {
+			res += count.applyAsLong(items.subList(from, Math.min(items.size(), from + inListChunkSize)));
+		}
+		return res;
 	}
 
 	@Override
 	@Transactional(readOnly = true)
 	public List<CarDto> getOwnerCars(long id) {
-		List<Car> cars = carRepo.findByCarOwnerId(id);
+		List<CarDto> cars = carRepo.findCarDtosByOwnerId(id);
 		if (cars.isEmpty()) {
 			log.warn("person with id {} has no cars", id);
 		} else {
-			log.debug("person with id {} has {} cars {}", id, cars.size());
+			log.debug("person with id {} has {} cars", id, cars.size());
 		}
-		return cars.stream().map(Car::build).toList();
+		return cars;
 	}
 
 	@Override
 	@Transactional(readOnly = true)
 	public PersonDto getCarOwner(String carNumber) {
-		Car car = carRepo.findById(carNumber).orElseThrow(() -> new CarNotFoundException());
-		CarOwner carOwner = car.getCarOwner();
-		log.debug("car owner is {}", carOwner);
-		return carOwner != null ? carOwner.build() : null;
+		PersonDto carOwner = carRepo.findOwnerDtoByCarNumber(carNumber).orElseThrow(() -> new CarNotFoundException());
+		log.debug("owner of car {} is {}", carNumber, carOwner.id());
+		return carOwner.id() != null ? carOwner : null;
+	}
+
+	// the distinct car numbers are looked up by chunks
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, CarOwnerResultDto> getCarOwners(List<String> carNumbers) {
+		Map<String, CarOwnerResultDto> res = new LinkedHashMap<>();
+		carNumbers.forEach(carNumber -> res.put(carNumber, CarOwnerResultDto.notFound(CAR_NOT_FOUND)));
+		List<String> distinctNumbers = List.copyOf(res.keySet());
+		List<CarNumberOwner> owners = new ArrayList<>(distinctNumbers.size());
+		forEachChunk(distinctNumbers, numbers -> owners.addAll(carRepo.findCarOwnersByNumbers(numbers)));
+		owners.forEach(owner -> res.put(owner.getNumber(), CarOwnerResultDto.of(owner.getId() == null ? null
+				: new PersonDto(owner.getId(), owner.getName(), owner.getBirthDate().toString(), owner.getEmail()))));
+		log.debug("owners of {} cars have been looked up, {} cars not found", distinctNumbers.size(),
+				distinctNumbers.size() - owners.size());
+		return res;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public String getOwnerCarsETag(long id) {
+		return carOwnerRepo.findVersionById(id).map(String::valueOf).orElse(null);
+	}
+
+	/**
+	 * the owner's ID is a part of the tag, since the owner is detached from the
+	 * car by the foreign key without change of the car's version
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public String getCarOwnerETag(String carNumber) {
+		return carRepo.findCarOwnerVersion(carNumber)
+				.map(version -> version.getOwnerId() == null ? String.valueOf(version.getCarVersion())
+						: "%d-%d-%d".formatted(version.getCarVersion(), version.getOwnerId(),
+								version.getOwnerVersion()))
+				.orElse(null);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public PageDto<CarDto> getOwnerCarsPage(long id, String pageToken, int pageSize) {
+		String after = pageToken == null ? "" : PageTokens.decode(pageToken);
+		List<CarDto> cars = carRepo.findCarDtosByOwnerIdAfter(id, after, pageSize + 1);
+		log.debug("person with id {} has {} cars after '{}'", id, cars.size(), after);
+		return toPage(cars, pageSize, car -> PageTokens.encode(car.number()));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public PageDto<TradeDealHistoryDto> getCarTradeDeals(String carNumber, String pageToken, int pageSize) {
+		PageTokens.DealKey after = PageTokens.decodeDealKey(pageToken);
+		List<TradeDealHistoryDto> deals = tradeDealRepo.findHistoryByCarNumberAfter(carNumber, after.date(),
+				after.id(), pageSize + 1);
+		log.debug("car {} has {} trade deals after {}", carNumber, deals.size(), after);
+		return toPage(deals, pageSize, deal -> PageTokens.encodeDealKey(deal.date(), deal.id()));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public PageDto<TradeDealHistoryDto> getOwnerTradeDeals(long id, String pageToken, int pageSize) {
+		PageTokens.DealKey after = PageTokens.decodeDealKey(pageToken);
+		List<TradeDealHistoryDto> deals = tradeDealRepo.findHistoryByOwnerIdAfter(id, after.date(), after.id(),
+				pageSize + 1);
+		log.debug("person with id {} has {} trade deals after {}", id, deals.size(), after);
+		return toPage(deals, pageSize, deal -> PageTokens.encodeDealKey(deal.date(), deal.id()));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<TradeDealHistoryDto> getCarHistory(String carNumber) {
+		List<TradeDealHistoryDto> res = tradeDealRepo.findHistoryByCarNumber(carNumber);
+		if (res.isEmpty() && !carRepo.existsById(carNumber)) {
+			throw new CarNotFoundException();
+		}
+		log.debug("car {} has {} trade deals", carNumber, res.size());
+		return res;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public List<TradeDealHistoryDto> getOwnerHistory(long id) {
+		List<TradeDealHistoryDto> res = tradeDealRepo.findHistoryByOwnerId(id);
+		if (res.isEmpty() && !carOwnerRepo.existsById(id)) {
+			throw new PersonNotFoundException();
+		}
+		log.debug("person with id {} has {} trade deals", id, res.size());
+		return res;
+	}
+
+	/**
+	 * makes a page from the items fetched with limit greater than the page size by
+	 * one; presence of the extra item means there is the next page
+	 */
+	private <T> PageDto<T> toPage(List<T> items, int pageSize, Function<T, String> nextToken) {
+		String next = null;
+		if (items.size() > pageSize) {
+			items = List.copyOf(items.subList(0, pageSize));
+			next = nextToken.apply(items.get(pageSize - 1));
+		}
+		return new PageDto<>(items, next);
 	}
 
 	@Override
 	public List<String> mostSoldModelNames() {
-		List<String> res = modelRepo.findMostSoldModelNames();
+		List<String> res = modelCounterRepo.findMostSoldModelNames();
 		log.trace("most sold model names are {}", res);
 
 		return res;
@@ -144,7 +501,8 @@ public class CarsServiceImpl implements CarsService {
 
 	@Override
 	public List<ModelNameAmount> mostPopularModelNames(int nModels) {
-		List<ModelNameAmount> res = modelRepo.findMostPopularModelNames(nModels);
+		List<ModelNameAmount> res = fleetSnapshot.isReady() ? fleetSnapshot.mostPopularModelNames(nModels)
+				: modelCounterRepo.findMostPopularModelNames(nModels);
 		logModelNameAmounts(res);
 		return res;
 	}
@@ -154,28 +512,66 @@ public class CarsServiceImpl implements CarsService {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	/**
 	 * returns count of trade deals for a given 'modelName' at a given year / month
-	 * Try to apply only interface method name without @Query annotation
+	 * from the monthly rollup
 	 */
 	public long countTradeDealAtMonthModel(String modelName, int month, int year) {
-		LocalDate start = LocalDate.of(year, month, 1);
-		LocalDate end = start.with(TemporalAdjusters.lastDayOfMonth());
-		long res = tradeDealRepo.countByCarModelModelYearNameAndDateBetween(modelName, start, end);
+		long res = modelMonthDealsRepo.findById(new ModelMonth(modelName, year, month))
+				.map(ModelMonthDeals::getDealsCount).orElse(0l);
 		log.debug("count of trade deals on year {}, month {}, of model {} is {}", year, month, modelName, res);
 		return res;
 	}
 
+	@Override
+	@Transactional(readOnly = true)
+	public List<ModelDealsHistogramDto> tradeDealsHistogram(List<String> modelNames, String fromMonth,
+			String toMonth) {
+		YearMonth from = parseMonth(fromMonth);
+		YearMonth to = parseMonth(toMonth);
+		long nMonths = from.until(to, ChronoUnit.MONTHS) + 1;
+		if (nMonths < 1 || nMonths > MAX_HISTOGRAM_MONTHS) {
+			throw new IllegalArgumentException(WRONG_HISTOGRAM_MONTHS);
+		}
+		Map<String, long[]> histograms = new LinkedHashMap<>();
+		modelNames.forEach(name -> histograms.putIfAbsent(name, new long[(int) nMonths]));
+		modelMonthDealsRepo.findByModelNamesMonths(histograms.keySet(), from.getYear(), to.getYear(),
+				monthNumber(from), monthNumber(to)).forEach(monthDeals -> {
+					ModelMonth modelMonth = monthDeals.getModelMonth();
+					int index = monthNumber(YearMonth.of(modelMonth.getYear(), modelMonth.getMonth())) - monthNumber(from);
+					histograms.get(modelMonth.getName())[index] = monthDeals.getDealsCount();
+				});
+		log.debug("histograms of trade deals of {} models, months {} - {}", histograms.size(), from, to);
+		return histograms.entrySet().stream().map(e -> new ModelDealsHistogramDto(e.getKey(), from.toString(),
+				Arrays.stream(e.getValue()).boxed().toList())).toList();
+	}
+
+	private YearMonth parseMonth(String month) {
+		try {
+			return YearMonth.parse(month);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException(WRONG_MONTH_FORMAT);
+		}
+	}
+
+	private int monthNumber(YearMonth month) {
+		return month.getYear() * 12 + month.getMonthValue();
+	}
+
 	@Override
 	/**
 	 * returns list of a given number of most popular (most cars amount) model names
 	 * and appropriate amounts of the cars, owners of which have an age in a given
-	 * range
+	 * range, from the owner ages index
 	 */
+	@Transactional(readOnly = true)
 	public List<ModelNameAmount> mostPopularModelNameByOwnerAges(int nModels, int ageFrom, int ageTo) {
 		LocalDate birthDateBegin = getBirthDate(ageTo);
 		LocalDate birthDateEnd = getBirthDate(ageFrom);
-		List<ModelNameAmount> res = modelRepo.findPopularModelNameOwnerAges(nModels, birthDateBegin, birthDateEnd);
+		List<ModelNameAmount> res = fleetSnapshot.isReady()
+				? fleetSnapshot.mostPopularModelNames(nModels, birthDateBegin, birthDateEnd)
+				: ownerAgesIndex.mostPopularModelNames(nModels, birthDateBegin, birthDateEnd);
 		logModelNameAmounts(res);
 		return res;
 	}
@@ -189,7 +585,8 @@ public class CarsServiceImpl implements CarsService {
 	 * returns one most popular color of a given model
 	 */
 	public String oneMostPopularColorModel(String model) {
-		String res = carRepo.findOneMostPopularColorModel(model);
+		String res = fleetSnapshot.isReady() ? fleetSnapshot.mostPopularColor(model)
+				: carRepo.findOneMostPopularColorModel(model);
 		log.debug("most popular color of {} is {}", model, res);
 		return res;
 	}
@@ -197,22 +594,28 @@ public class CarsServiceImpl implements CarsService {
 	@Override
 	/**
 	 * returns minimal values of engine power and capacity of car owners having an
-	 * age in a given range
+	 * age in a given range, from the owner ages index; null if such owners have no
+	 * cars
 	 */
+	@Transactional(readOnly = true)
 	public EnginePowerCapacity minEnginePowerCapacityByOwnerAges(int ageFrom, int ageTo) {
 		LocalDate birthDateBegin = getBirthDate(ageTo);
 		LocalDate birthDateEnd = getBirthDate(ageFrom);
-		EnginePowerCapacity res = carRepo.findMinPowerCapacityOwnerBirthDates(birthDateBegin, birthDateEnd);
-		log.debug("min engine capacity is {}, min power is {} of cars belonging to owners of ages {}-{}",
-				res.getCapacity(), res.getPower(), ageFrom, ageTo);
+		EnginePowerCapacity res = fleetSnapshot.isReady() ? fleetSnapshot.minPowerCapacity(birthDateBegin, birthDateEnd)
+				: ownerAgesIndex.minPowerCapacity(birthDateBegin, birthDateEnd);
+		if (res == null) {
+			log.warn("owners of ages {}-{} have no cars", ageFrom, ageTo);
+		} else {
+			log.debug("min engine capacity is {}, min power is {} of cars belonging to owners of ages {}-{}",
+					res.getCapacity(), res.getPower(), ageFrom, ageTo);
+		}
 		return res;
 	}
 
 	@Override
 	public List<String> anyQuery(QueryDto queryDto) {
 		try {
-			Query query = queryDto.type() == QueryType.JPQL ? em.createQuery(queryDto.query())
-					: em.createNativeQuery(queryDto.query());
+			Query query = createQuery(queryDto);
 			List<String> res = getResult(query);
 			log.debug("Query result: {}", res);
 			return res;
@@ -221,6 +624,77 @@ public class CarsServiceImpl implements CarsService {
 		}
 	}
 
+	private Query createQuery(QueryDto queryDto) {
+		QueryTemplates.QueryTemplate template = queryTemplates.get(queryDto);
+		Query query = template.type() == QueryType.JPQL ? em.createQuery(template.text())
+				: em.createNativeQuery(template.text());
+		queryTemplates.bindParameters(query, template, queryDto.parameters());
+		return query;
+	}
+
+	@Override
+	public CacheStatsDto getQueryTemplatesStats() {
+		return queryTemplates.getStats();
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public QueryStreamResultDto anyQueryStream(QueryDto queryDto, Consumer<List<Object>> rowsConsumer) {
+		Stream<?> rows;
+		try {
+			rows = createQuery(queryDto).setHint(HibernateHints.HINT_FETCH_SIZE, queryFetchSize).getResultStream();
+		} catch (Throwable e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+		long nRows = 0;
+		boolean truncated;
+		try (rows) {
+			Iterator<?> iterator = rows.iterator();
+			while (nRows < queryMaxRows && iterator.hasNext()) {
+				rowsConsumer.accept(toRowValues(iterator.next()));
+				if (++nRows % queryFetchSize == 0) {
+					// entities of the already written rows aren't needed any more
+					em.clear();
+				}
+			}
+			truncated = iterator.hasNext();
+		}
+		if (truncated) {
+			log.warn("Query result: streaming has been stopped at the cap of {} rows", queryMaxRows);
+		} else {
+			log.debug("Query result: {} rows have been streamed", nRows);
+		}
+		return new QueryStreamResultDto(nRows, truncated);
+	}
+
+	private List<Object> toRowValues(Object row) {
+		Object[] columns = row instanceof Object[] array ? array : new Object[] { row };
+		List<Object> res = new ArrayList<>(columns.length);
+		for (Object column : columns) {
+			res.add(toColumnValue(column));
+		}
+		return res;
+	}
+
+	/**
+	 * keeps values having JSON representation, entities are represented by their
+	 * DTOs
+	 */
+	private Object toColumnValue(Object value) {
+		Object res = value;
+		if (value instanceof Car car) {
+			res = car.build();
+		} else if (value instanceof CarOwner carOwner) {
+			res = carOwner.build();
+		} else if (value instanceof Model model) {
+			res = model.build();
+		} else if (value != null && !(value instanceof Number || value instanceof CharSequence
+				|| value instanceof Boolean || value instanceof Temporal || value instanceof Enum)) {
+			res = value.toString();
+		}
+		return res;
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private List<String> getResult(Query query) {
 		List resultList = query.getResultList();
@@ -242,4 +716,148 @@ public class CarsServiceImpl implements CarsService {
 
 		return resultList.stream().map(Arrays::deepToString).toList();
 	}
+
+	@Override
+	@Transactional
+	public List<BatchItemResultDto> addModels(List<ModelDto> modelDtos) {
+		Set<String> names = modelDtos.stream().map(ModelDto::modelName).collect(Collectors.toSet());
+		Set<ModelYear> existing = modelRepo.findByModelYearNameIn(names).stream().map(Model::getModelYear)
+				.collect(Collectors.toSet());
+		Set<ModelYear> received = new HashSet<>();
+		List<Model> models = new ArrayList<>();
+		List<BatchItemResultDto> res = new ArrayList<>(modelDtos.size());
+		for (ModelDto modelDto : modelDtos) {
+			ModelYear modelYear = new ModelYear(modelDto.modelName(), modelDto.modelYear());
+			String id = modelDto.modelName() + " " + modelDto.modelYear();
+			if (existing.contains(modelYear)) {
+				res.add(BatchItemResultDto.error(id, MODEL_ALREADY_EXISTS));
+			} else if (!received.add(modelYear)) {
+				res.add(BatchItemResultDto.error(id, DUPLICATED_BATCH_ITEM));
+			} else {
+				models.add(Model.of(modelDto));
+				res.add(BatchItemResultDto.ok(id));
+			}
+		}
+		persistInBatches(models);
+		modelsCache.putAfterCommit(models);
+		log.debug("{} of {} models have been saved", models.size(), modelDtos.size());
+		return res;
+	}
+
+	@Override
+	@Transactional
+	public List<BatchItemResultDto> addPersons(List<PersonDto> personDtos) {
+		Set<Long> existing = new HashSet<>(
+				carOwnerRepo.findExistingIds(personDtos.stream().map(PersonDto::id).collect(Collectors.toSet())));
+		Set<Long> received = new HashSet<>();
+		List<CarOwner> carOwners = new ArrayList<>();
+		List<BatchItemResultDto> res = new ArrayList<>(personDtos.size());
+		for (PersonDto personDto : personDtos) {
+			String id = personDto.id().toString();
+			if (existing.contains(personDto.id())) {
+				res.add(BatchItemResultDto.error(id, PERSON_ALREADY_EXISTS));
+			} else if (!received.add(personDto.id())) {
+				res.add(BatchItemResultDto.error(id, DUPLICATED_BATCH_ITEM));
+			} else {
+				carOwners.add(CarOwner.of(personDto));
+				res.add(BatchItemResultDto.ok(id));
+			}
+		}
+		persistInBatches(carOwners);
+		log.debug("{} of {} persons have been saved", carOwners.size(), personDtos.size());
+		return res;
+	}
+
+	@Override
+	@Transactional
+	public List<BatchItemResultDto> addCars(List<CarDto> carDtos) {
+		Set<String> existing = new HashSet<>(
+				carRepo.findExistingNumbers(carDtos.stream().map(CarDto::number).collect(Collectors.toSet())));
+		Set<String> modelNames = carDtos.stream().map(CarDto::model).collect(Collectors.toSet());
+		Map<ModelYear, Model> models = modelRepo.findByModelYearNameIn(modelNames).stream()
+				.collect(Collectors.toMap(Model::getModelYear, model -> model));
+		Set<String> received = new HashSet<>();
+		List<Car> cars = new ArrayList<>();
+		List<BatchItemResultDto> res = new ArrayList<>(carDtos.size());
+		for (CarDto carDto : carDtos) {
+			String id = carDto.number();
+			Model model = models.get(new ModelYear(carDto.model(), carDto.year()));
+			if (existing.contains(id)) {
+				res.add(BatchItemResultDto.error(id, CAR_ALREADY_EXISTS));
+			} else if (!received.add(id)) {
+				res.add(BatchItemResultDto.error(id, DUPLICATED_BATCH_ITEM));
+			} else if (model == null) {
+				res.add(BatchItemResultDto.error(id, MODEL_NOT_FOUND));
+			} else {
+				Car car = Car.of(carDto);
+				car.setModel(model);
+				cars.add(car);
+				res.add(BatchItemResultDto.ok(id));
+			}
+		}
+		persistInBatches(cars);
+		cars.forEach(car -> {
+			fleetSnapshot.putAfterCommit(car, null);
+			carsEvents.publishAfterCommit(CarsEvent.carAdded(car.getNumber(), car.getModel().getModelYear().getName()));
+		});
+		cars.stream().collect(Collectors.groupingBy(car -> car.getModel().getModelYear().getName(),
+				Collectors.counting())).forEach((modelName, count) -> modelCounterRepo.addCounts(modelName, count, 0));
+		log.debug("{} of {} cars have been saved", cars.size(), carDtos.size());
+		return res;
+	}
+
+	@Override
+	public TradeDealsImportDto importTradeDeals(String importName, InputStream input) {
+		return tradeDealsImporter.importTradeDeals(importName, input);
+	}
+
+	@Override
+	@Transactional
+	public int rebuildModelCounters() {
+		modelCounterRepo.deleteAllCounters();
+		int res = modelCounterRepo.insertCountersFromBaseTables();
+		modelMonthDealsRepo.deleteAllMonthDeals();
+		int nMonthDeals = modelMonthDealsRepo.insertMonthDealsFromBaseTables();
+		int nBirthYearModels = ownerAgesIndex.rebuild();
+		log.info("counters of {} model names, {} monthly trade deals counts and {} owner ages buckets have been rebuilt",
+				res, nMonthDeals, nBirthYearModels);
+		return res;
+	}
+
+	@Override
+	public FleetSnapshotCheckDto checkFleetSnapshot() {
+		return fleetSnapshot.check();
+	}
+
+	@Override
+	public CacheStatsDto getModelsCacheStats() {
+		return modelsCache.getStats();
+	}
+
+	@Override
+	public Map<String, CacheStatsDto> getEntityCachesStats() {
+		return entityCaches.getStats();
+	}
+
+	/**
+	 * persists the given new entities flushing them by JDBC batches; flushed
+	 * entities are detached so the persistence context doesn't grow with the batch
+	 */
+	private <T> void persistInBatches(List<T> entities) {
+		List<T> batch = new ArrayList<>(batchSize);
+		for (T entity : entities) {
+			em.persist(entity);
+			batch.add(entity);
+			if (batch.size() == batchSize) {
+				flushBatch(batch);
+			}
+		}
+		flushBatch(batch);
+	}
+
+	private <T> void flushBatch(List<T> batch) {
+		em.flush();
+		batch.forEach(em::detach);
+		batch.clear();
+	}
 }
\ No newline at end of file
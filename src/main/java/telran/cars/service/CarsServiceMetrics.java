@@ -0,0 +1,45 @@
+package telran.cars.service;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Times every call of CarsService methods. Timers are tagged with the method
+ * name, the outcome (success or error) and the simple class name of the thrown
+ * exception, percentile histograms are enabled by the
+ * management.metrics.distribution properties
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class CarsServiceMetrics {
+	public static final String TIMER_NAME = "cars.service";
+	static final String NO_EXCEPTION = "none";
+	final MeterRegistry meterRegistry;
+
+	@Around("execution(public * telran.cars.service.CarsService.*(..))")
+	public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+		Timer.Sample sample = Timer.start(meterRegistry);
+		String exception = NO_EXCEPTION;
+		boolean success = false;
+		try {
+			Object result = joinPoint.proceed();
+			success = true;
+			return result;
+		} catch (Throwable e) {
+			exception = e.getClass().getSimpleName();
+			throw e;
+		} finally {
+			sample.stop(Timer.builder(TIMER_NAME).description("Calls of the cars service methods")
+					.tag("method", joinPoint.getSignature().getName())
+					.tag("outcome", success ? "success" : "error").tag("exception", exception)
+					.register(meterRegistry));
+		}
+	}
+}
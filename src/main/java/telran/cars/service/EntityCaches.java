@@ -0,0 +1,74 @@
+package telran.cars.service;
+
+import java.util.*;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import telran.cars.dto.CacheStatsDto;
+import telran.cars.service.model.Car;
+
+/**
+ * Regions of the Hibernate second-level cache (cached entities and query
+ * results). Writes made by the database itself, such as foreign key actions,
+ * bypass the cache, so the entities affected by them are evicted here
+ */
+@Component
+@Slf4j
+public class EntityCaches {
+	final EntityManagerFactory entityManagerFactory;
+	final Statistics statistics;
+
+	public EntityCaches(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = entityManagerFactory;
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	public List<String> getRegionNames() {
+		return Arrays.stream(statistics.getSecondLevelCacheRegionNames()).sorted().toList();
+	}
+
+	/**
+	 * returns empty statistics for unknown region; size is -1 if the cache
+	 * provider doesn't count the cached items
+	 */
+	public CacheStatsDto getStats(String region) {
+		CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+		if (regionStatistics == null) {
+			return CacheStatsDto.of(0, 0, 0);
+		}
+		long size = regionStatistics.getElementCountInMemory();
+		return CacheStatsDto.of(regionStatistics.getHitCount(), regionStatistics.getMissCount(),
+				size < 0 ? -1 : size);
+	}
+
+	public Map<String, CacheStatsDto> getStats() {
+		Map<String, CacheStatsDto> res = new LinkedHashMap<>();
+		getRegionNames().forEach(region -> res.put(region, getStats(region)));
+		return res;
+	}
+
+	public void evictCarsAfterCommit(Collection<String> carNumbers) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					evictCars(carNumbers);
+				}
+			});
+		} else {
+			evictCars(carNumbers);
+		}
+	}
+
+	private void evictCars(Collection<String> carNumbers) {
+		carNumbers.forEach(carNumber -> entityManagerFactory.getCache().evict(Car.class, carNumber));
+		log.trace("{} cars have been evicted from the second-level cache", carNumbers.size());
+	}
+}
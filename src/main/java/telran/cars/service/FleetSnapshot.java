@@ -0,0 +1,458 @@
+package telran.cars.service;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.cars.dto.*;
+import telran.cars.repo.CarRepo;
+import telran.cars.service.model.*;
+
+/**
+ * In-memory columnar snapshot of the fleet for the analytics: one row per car
+ * in primitive arrays of model IDs, owner IDs, owner birth days, kilometers,
+ * dictionary encoded colors and states. Model name and year, engine power and
+ * capacity are attributes of the model ID. The snapshot is loaded at startup
+ * if app.fleet.snapshot.enabled and updated after commit of the service write
+ * paths. Updates committed while the snapshot is being loaded are replayed on
+ * the loaded rows, the car version discards an update older than the row
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FleetSnapshot {
+	static final long NO_OWNER = 0;
+	static final int NO_BIRTH_DAY = Integer.MIN_VALUE;
+	static final int NO_VALUE = -1;
+	private static final CarState[] STATES = CarState.values();
+	private static final int INITIAL_CAPACITY = 1024;
+
+	final CarRepo carRepo;
+	final ModelsCache modelsCache;
+	final PlatformTransactionManager transactionManager;
+	final ReadWriteLock lock = new ReentrantReadWriteLock();
+	volatile Columns columns;
+	// updates committed during the load, non-null while loading
+	List<Consumer<Columns>> pending;
+
+	@Value("${app.fleet.snapshot.enabled:false}")
+	boolean enabled;
+
+	record Row(String number, ModelDto model, long ownerId, int birthDay, int kilometers, String color,
+			CarState state, long version) {
+	}
+
+	static class Columns {
+		int size;
+		String[] numbers = new String[INITIAL_CAPACITY];
+		int[] modelIds = new int[INITIAL_CAPACITY];
+		long[] ownerIds = new long[INITIAL_CAPACITY];
+		int[] birthDays = new int[INITIAL_CAPACITY];
+		int[] kilometers = new int[INITIAL_CAPACITY];
+		int[] colorIds = new int[INITIAL_CAPACITY];
+		byte[] states = new byte[INITIAL_CAPACITY];
+		long[] versions = new long[INITIAL_CAPACITY];
+		final Map<String, Integer> rows = new HashMap<>();
+		// dictionaries
+		final List<ModelDto> models = new ArrayList<>();
+		final Map<ModelYear, Integer> modelIdsByModel = new HashMap<>();
+		int[] modelNameIds = new int[0];
+		int[] enginePowers = new int[0];
+		int[] engineCapacities = new int[0];
+		final List<String> modelNames = new ArrayList<>();
+		final Map<String, Integer> modelNameIdsByName = new HashMap<>();
+		final List<String> colors = new ArrayList<>();
+		final Map<String, Integer> colorIdsByColor = new HashMap<>();
+
+		void put(Row row) {
+			Integer index = rows.get(row.number());
+			if (index == null) {
+				ensureCapacity();
+				index = size++;
+				rows.put(row.number(), index);
+				numbers[index] = row.number();
+			} else if (row.version() < versions[index]) {
+				return;
+			}
+			modelIds[index] = modelId(row.model());
+			ownerIds[index] = row.ownerId();
+			birthDays[index] = row.birthDay();
+			kilometers[index] = row.kilometers();
+			colorIds[index] = row.color() == null ? NO_VALUE : dictionaryId(row.color(), colors, colorIdsByColor);
+			states[index] = (byte) (row.state() == null ? NO_VALUE : row.state().ordinal());
+			versions[index] = row.version();
+		}
+
+		// the last row takes place of the removed one
+		void remove(String number) {
+			Integer index = rows.remove(number);
+			if (index != null) {
+				int last = --size;
+				if (index != last) {
+					numbers[index] = numbers[last];
+					modelIds[index] = modelIds[last];
+					ownerIds[index] = ownerIds[last];
+					birthDays[index] = birthDays[last];
+					kilometers[index] = kilometers[last];
+					colorIds[index] = colorIds[last];
+					states[index] = states[last];
+					versions[index] = versions[last];
+					rows.put(numbers[index], index);
+				}
+				numbers[last] = null;
+			}
+		}
+
+		void clearOwner(long ownerId) {
+			for (int i = 0; i < size; i++) {
+				if (ownerIds[i] == ownerId) {
+					ownerIds[i] = NO_OWNER;
+					birthDays[i] = NO_BIRTH_DAY;
+				}
+			}
+		}
+
+		boolean matches(Row row) {
+			Integer index = rows.get(row.number());
+			if (index == null) {
+				return false;
+			}
+			ModelDto model = models.get(modelIds[index]);
+			int colorId = colorIds[index];
+			int state = states[index];
+			return model.modelName().equals(row.model().modelName())
+					&& model.modelYear().equals(row.model().modelYear()) && ownerIds[index] == row.ownerId()
+					&& birthDays[index] == row.birthDay() && kilometers[index] == row.kilometers()
+					&& Objects.equals(colorId == NO_VALUE ? null : colors.get(colorId), row.color())
+					&& (state == NO_VALUE ? null : STATES[state]) == row.state();
+		}
+
+		private void ensureCapacity() {
+			if (size == numbers.length) {
+				int capacity = size * 2;
+				numbers = Arrays.copyOf(numbers, capacity);
+				modelIds = Arrays.copyOf(modelIds, capacity);
+				ownerIds = Arrays.copyOf(ownerIds, capacity);
+				birthDays = Arrays.copyOf(birthDays, capacity);
+				kilometers = Arrays.copyOf(kilometers, capacity);
+				colorIds = Arrays.copyOf(colorIds, capacity);
+				states = Arrays.copyOf(states, capacity);
+				versions = Arrays.copyOf(versions, capacity);
+			}
+		}
+
+		private int modelId(ModelDto model) {
+			ModelYear modelYear = new ModelYear(model.modelName(), model.modelYear());
+			Integer res = modelIdsByModel.get(modelYear);
+			if (res == null) {
+				res = models.size();
+				models.add(model);
+				modelIdsByModel.put(modelYear, res);
+				modelNameIds = Arrays.copyOf(modelNameIds, res + 1);
+				enginePowers = Arrays.copyOf(enginePowers, res + 1);
+				engineCapacities = Arrays.copyOf(engineCapacities, res + 1);
+				modelNameIds[res] = dictionaryId(model.modelName(), modelNames, modelNameIdsByName);
+				enginePowers[res] = model.enginePower();
+				engineCapacities[res] = model.engineCapacity();
+			}
+			return res;
+		}
+
+		private static int dictionaryId(String value, List<String> values, Map<String, Integer> ids) {
+			return ids.computeIfAbsent(value, v -> {
+				values.add(v);
+				return values.size() - 1;
+			});
+		}
+
+		long[] countModelNames() {
+			long[] res = new long[modelNames.size()];
+			for (int i = 0; i < size; i++) {
+				res[modelNameIds[modelIds[i]]]++;
+			}
+			return res;
+		}
+
+		long[] countModelNames(int fromDay, int toDay) {
+			long[] res = new long[modelNames.size()];
+			for (int i = 0; i < size; i++) {
+				int birthDay = birthDays[i];
+				if (birthDay >= fromDay && birthDay <= toDay) {
+					res[modelNameIds[modelIds[i]]]++;
+				}
+			}
+			return res;
+		}
+
+		List<ModelNameAmount> mostPopular(long[] counts, int nModels) {
+			return IntStream.range(0, counts.length).filter(id -> counts[id] > 0).boxed()
+					.sorted(Comparator.<Integer>comparingLong(id -> -counts[id]).thenComparing(modelNames::get))
+					.limit(nModels).map(id -> ModelNameAmount.of(modelNames.get(id), counts[id])).toList();
+		}
+
+		String mostPopularColor(String modelName) {
+			Integer modelNameId = modelNameIdsByName.get(modelName);
+			String res = null;
+			if (modelNameId != null) {
+				int[] counts = new int[colors.size()];
+				for (int i = 0; i < size; i++) {
+					int colorId = colorIds[i];
+					if (colorId != NO_VALUE && modelNameIds[modelIds[i]] == modelNameId) {
+						counts[colorId]++;
+					}
+				}
+				int max = 0;
+				for (int colorId = 0; colorId < counts.length; colorId++) {
+					String color = colors.get(colorId);
+					if (counts[colorId] > max || counts[colorId] == max && max > 0 && color.compareTo(res) < 0) {
+						max = counts[colorId];
+						res = color;
+					}
+				}
+			}
+			return res;
+		}
+
+		EnginePowerCapacity minPowerCapacity(int fromDay, int toDay) {
+			int power = Integer.MAX_VALUE;
+			int capacity = Integer.MAX_VALUE;
+			boolean found = false;
+			for (int i = 0; i < size; i++) {
+				int birthDay = birthDays[i];
+				if (birthDay >= fromDay && birthDay <= toDay) {
+					int modelId = modelIds[i];
+					power = Math.min(power, enginePowers[modelId]);
+					capacity = Math.min(capacity, engineCapacities[modelId]);
+					found = true;
+				}
+			}
+			return found ? EnginePowerCapacity.of(power, capacity) : null;
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		if (enabled) {
+			load();
+		}
+	}
+
+	public boolean isReady() {
+		return enabled && columns != null;
+	}
+
+	/**
+	 * loads all cars into new columns, the current columns (if any) serve the
+	 * analytics until the load is over
+	 */
+	public void load() {
+		lock.writeLock().lock();
+		try {
+			if (pending != null) {
+				log.debug("fleet snapshot is already being loaded");
+				return;
+			}
+			pending = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Columns loaded = new Columns();
+		boolean success = false;
+		try {
+			readOnlyTransaction().executeWithoutResult(status -> {
+				try (Stream<FleetCar> cars = carRepo.streamFleetCars()) {
+					cars.forEach(car -> loaded.put(toRow(car)));
+				}
+			});
+			success = true;
+		} catch (DataAccessException e) {
+			log.warn("fleet snapshot has not been loaded: {}", e.getMessage());
+		}
+		lock.writeLock().lock();
+		try {
+			if (success) {
+				int nPending = pending.size();
+				pending.forEach(update -> update.accept(loaded));
+				columns = loaded;
+				log.info("fleet snapshot has been loaded with {} cars, {} concurrent updates replayed", loaded.size,
+						nPending);
+			}
+		} finally {
+			pending = null;
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * compares all cars of the database with the snapshot and reloads the
+	 * snapshot if they differ
+	 */
+	public FleetSnapshotCheckDto check() {
+		if (!enabled) {
+			return new FleetSnapshotCheckDto(0, 0, false);
+		}
+		long[] counts = new long[3]; // cars, mismatches, cars found in the snapshot
+		if (columns != null) {
+			readOnlyTransaction().executeWithoutResult(status -> {
+				try (Stream<FleetCar> cars = carRepo.streamFleetCars()) {
+					cars.forEach(car -> {
+						Row row = toRow(car);
+						counts[0]++;
+						lock.readLock().lock();
+						try {
+							if (columns.rows.containsKey(row.number())) {
+								counts[2]++;
+							}
+							if (!columns.matches(row)) {
+								counts[1]++;
+							}
+						} finally {
+							lock.readLock().unlock();
+						}
+					});
+				}
+			});
+		}
+		long mismatches = columns == null ? 1 : counts[1] + Math.max(0, columns.size - counts[2]);
+		if (mismatches > 0) {
+			log.warn("fleet snapshot differs from the database in {} cars and will be reloaded", mismatches);
+			load();
+		} else {
+			log.debug("fleet snapshot of {} cars is consistent with the database", counts[0]);
+		}
+		return new FleetSnapshotCheckDto(counts[0], mismatches, mismatches > 0);
+	}
+
+	private TransactionTemplate readOnlyTransaction() {
+		TransactionTemplate res = new TransactionTemplate(transactionManager);
+		res.setReadOnly(true);
+		return res;
+	}
+
+	private Row toRow(FleetCar car) {
+		return new Row(car.getNumber(), model(new ModelYear(car.getModelName(), car.getModelYear())),
+				car.getOwnerId() == null ? NO_OWNER : car.getOwnerId(),
+				car.getBirthDate() == null ? NO_BIRTH_DAY : (int) car.getBirthDate().toEpochDay(),
+				car.getKilometers() == null ? NO_VALUE : car.getKilometers(), car.getColor(), car.getState(),
+				car.getVersion());
+	}
+
+	private ModelDto model(ModelYear modelYear) {
+		return modelsCache.get(modelYear).orElseThrow(() -> new IllegalStateException("no model " + modelYear));
+	}
+
+	// the car's version is taken after commit, when it has been incremented by the flush
+	public void putAfterCommit(Car car, CarOwner carOwner) {
+		if (enabled) {
+			long ownerId = carOwner == null ? NO_OWNER : carOwner.getId();
+			int birthDay = carOwner == null ? NO_BIRTH_DAY : (int) carOwner.getBirthDate().toEpochDay();
+			afterCommit(() -> {
+				Row row = new Row(car.getNumber(), model(car.getModel().getModelYear()), ownerId, birthDay,
+						car.getKilometers() == null ? NO_VALUE : car.getKilometers(), car.getColor(), car.getState(),
+						car.getVersion());
+				update(columns -> columns.put(row));
+			});
+		}
+	}
+
+	public void removeAfterCommit(String carNumber) {
+		if (enabled) {
+			afterCommit(() -> update(columns -> columns.remove(carNumber)));
+		}
+	}
+
+	public void removeAllAfterCommit(Collection<String> carNumbers) {
+		if (enabled) {
+			afterCommit(() -> update(columns -> carNumbers.forEach(columns::remove)));
+		}
+	}
+
+	public void clearOwnerAfterCommit(long ownerId) {
+		if (enabled) {
+			afterCommit(() -> update(columns -> columns.clearOwner(ownerId)));
+		}
+	}
+
+	private void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+
+	private void update(Consumer<Columns> update) {
+		lock.writeLock().lock();
+		try {
+			if (columns != null) {
+				update.accept(columns);
+			}
+			if (pending != null) {
+				pending.add(update);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public String mostPopularColor(String modelName) {
+		lock.readLock().lock();
+		try {
+			return columns.mostPopularColor(modelName);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<ModelNameAmount> mostPopularModelNames(int nModels) {
+		lock.readLock().lock();
+		try {
+			return columns.mostPopular(columns.countModelNames(), nModels);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public List<ModelNameAmount> mostPopularModelNames(int nModels, LocalDate birthDateFrom, LocalDate birthDateTo) {
+		lock.readLock().lock();
+		try {
+			return columns.mostPopular(columns.countModelNames((int) birthDateFrom.toEpochDay(),
+					(int) birthDateTo.toEpochDay()), nModels);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * returns null if owners born in the given range have no cars
+	 */
+	public EnginePowerCapacity minPowerCapacity(LocalDate birthDateFrom, LocalDate birthDateTo) {
+		lock.readLock().lock();
+		try {
+			return columns.minPowerCapacity((int) birthDateFrom.toEpochDay(), (int) birthDateTo.toEpochDay());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
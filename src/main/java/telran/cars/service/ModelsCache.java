@@ -0,0 +1,86 @@
+package telran.cars.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.cars.dto.*;
+import telran.cars.repo.ModelRepo;
+import telran.cars.service.model.*;
+
+/**
+ * In-process cache of the models catalog. Models are never updated, so the
+ * cache is filled at startup and by lookups, new models are added after
+ * commit of the transaction saving them. Once the cache has reached its
+ * maximal size, lookups of not cached models go to the database
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ModelsCache {
+	final ModelRepo modelRepo;
+	final Map<ModelYear, ModelDto> models = new ConcurrentHashMap<>();
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+
+	@Value("${app.models.cache.max-size:10000}")
+	int maxSize;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUp() {
+		try {
+			modelRepo.findAll(PageRequest.of(0, maxSize)).forEach(this::put);
+			log.info("models cache has been warmed up with {} models", models.size());
+		} catch (DataAccessException e) {
+			// the cache is filled by lookups anyway
+			log.warn("models cache has not been warmed up: {}", e.getMessage());
+		}
+	}
+
+	public Optional<ModelDto> get(ModelYear modelYear) {
+		ModelDto res = models.get(modelYear);
+		if (res != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			res = modelRepo.findById(modelYear).map(this::put).orElse(null);
+		}
+		return Optional.ofNullable(res);
+	}
+
+	public ModelDto put(Model model) {
+		ModelDto modelDto = model.build();
+		if (models.size() < maxSize) {
+			models.put(model.getModelYear(), modelDto);
+		}
+		return modelDto;
+	}
+
+	public void putAfterCommit(List<Model> newModels) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					newModels.forEach(ModelsCache.this::put);
+				}
+			});
+		} else {
+			newModels.forEach(this::put);
+		}
+	}
+
+	public CacheStatsDto getStats() {
+		return CacheStatsDto.of(hits.sum(), misses.sum(), models.size());
+	}
+}
@@ -0,0 +1,108 @@
+package telran.cars.service;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.*;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import telran.cars.dto.*;
+import telran.cars.repo.*;
+import telran.cars.service.model.*;
+
+/**
+ * Index of the owned cars bucketed by birth year of the owners. A range of
+ * birth dates is served by the buckets of the whole birth years inside it,
+ * only cars of the owners born in the partial years at the range bounds are
+ * read from the cars table by the birth date index
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OwnerAgesIndex {
+	private static final MonthDay FIRST_DAY = MonthDay.of(1, 1);
+	private static final MonthDay LAST_DAY = MonthDay.of(12, 31);
+
+	final BirthYearModelCarsRepo birthYearModelCarsRepo;
+	final CarRepo carRepo;
+	final ModelRepo modelRepo;
+
+	record DatesRange(LocalDate from, LocalDate to) {
+	}
+
+	/**
+	 * whole birth years inside a range of birth dates (fromYear greater than
+	 * toYear if none) and the ranges of the partial years
+	 */
+	record BirthYears(int fromYear, int toYear, List<DatesRange> partialYears) {
+		static BirthYears of(LocalDate from, LocalDate to) {
+			int fromYear = MonthDay.from(from).equals(FIRST_DAY) ? from.getYear() : from.getYear() + 1;
+			int toYear = MonthDay.from(to).equals(LAST_DAY) ? to.getYear() : to.getYear() - 1;
+			List<DatesRange> partialYears = new ArrayList<>(2);
+			if (fromYear > toYear) {
+				if (!from.isAfter(to)) {
+					partialYears.add(new DatesRange(from, to));
+				}
+			} else {
+				if (from.getYear() < fromYear) {
+					partialYears.add(new DatesRange(from, LocalDate.of(from.getYear(), 12, 31)));
+				}
+				if (to.getYear() > toYear) {
+					partialYears.add(new DatesRange(LocalDate.of(to.getYear(), 1, 1), to));
+				}
+			}
+			return new BirthYears(fromYear, toYear, partialYears);
+		}
+	}
+
+	public void addCar(CarOwner carOwner, Car car, long delta) {
+		if (carOwner != null) {
+			birthYearModelCarsRepo.addCars(carOwner.getBirthDate(), car.getModel().getModelYear(), delta);
+		}
+	}
+
+	public void removeCars(int birthYear, ModelYear modelYear, long count) {
+		birthYearModelCarsRepo.increment(birthYear, modelYear.getName(), modelYear.getYear(), -count);
+	}
+
+	public List<ModelNameAmount> mostPopularModelNames(int nModels, LocalDate birthDateFrom, LocalDate birthDateTo) {
+		BirthYears birthYears = BirthYears.of(birthDateFrom, birthDateTo);
+		Map<String, Long> amounts = new HashMap<>();
+		Stream.concat(
+				birthYears.fromYear() <= birthYears.toYear() ? birthYearModelCarsRepo
+						.findModelNameAmounts(birthYears.fromYear(), birthYears.toYear()).stream() : Stream.empty(),
+				birthYears.partialYears().stream()
+						.flatMap(range -> modelRepo.findModelNameAmountsOwnerBirthDates(range.from(), range.to())
+								.stream()))
+				.forEach(amount -> amounts.merge(amount.getName(), amount.getAmount(), Long::sum));
+		log.trace("birth years {}: amounts of {} model names", birthYears, amounts.size());
+		return amounts.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.limit(nModels).map(e -> ModelNameAmount.of(e.getKey(), e.getValue())).toList();
+	}
+
+	/**
+	 * returns null if owners born in the given range have no cars
+	 */
+	public EnginePowerCapacity minPowerCapacity(LocalDate birthDateFrom, LocalDate birthDateTo) {
+		BirthYears birthYears = BirthYears.of(birthDateFrom, birthDateTo);
+		List<EnginePowerCapacity> mins = new ArrayList<>();
+		if (birthYears.fromYear() <= birthYears.toYear()) {
+			mins.addAll(birthYearModelCarsRepo.findMinPowerCapacities(birthYears.fromYear(), birthYears.toYear()));
+		}
+		birthYears.partialYears().forEach(range -> mins
+				.addAll(carRepo.findMinPowerCapacitiesOwnerBirthDates(range.from(), range.to())));
+		log.trace("birth years {}: {} minimal values", birthYears, mins.size());
+		return mins.isEmpty() ? null
+				: EnginePowerCapacity.of(mins.stream().mapToInt(EnginePowerCapacity::getPower).min().getAsInt(),
+						mins.stream().mapToInt(EnginePowerCapacity::getCapacity).min().getAsInt());
+	}
+
+	public int rebuild() {
+		birthYearModelCarsRepo.deleteAllBirthYearModelCars();
+		return birthYearModelCarsRepo.insertBirthYearModelCarsFromBaseTables();
+	}
+}
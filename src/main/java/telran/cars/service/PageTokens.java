@@ -0,0 +1,50 @@
+package telran.cars.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import telran.cars.api.ServiceExceptionMessages;
+
+/**
+ * encoding of keyset pagination positions into opaque page tokens
+ */
+class PageTokens {
+	private static final String SEPARATOR = ",";
+
+	private PageTokens() {
+	}
+
+	record DealKey(LocalDate date, long id) {
+		// position before the first trade deal
+		static final DealKey FIRST = new DealKey(LocalDate.of(1, 1, 1), 0);
+	}
+
+	static String encode(String key) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static String decode(String token) {
+		try {
+			return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(ServiceExceptionMessages.WRONG_PAGE_TOKEN);
+		}
+	}
+
+	static String encodeDealKey(String date, long id) {
+		return encode(date + SEPARATOR + id);
+	}
+
+	static DealKey decodeDealKey(String token) {
+		if (token == null) {
+			return DealKey.FIRST;
+		}
+		String[] fields = decode(token).split(SEPARATOR);
+		try {
+			return new DealKey(LocalDate.parse(fields[0]), Long.parseLong(fields[1]));
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException(ServiceExceptionMessages.WRONG_PAGE_TOKEN);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package telran.cars.service;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.format.datetime.standard.DateTimeFormatterRegistrar;
+import org.springframework.format.support.DefaultFormattingConversionService;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.Parameter;
+import jakarta.persistence.Query;
+import static telran.cars.api.ServiceExceptionMessages.*;
+import telran.cars.dto.*;
+
+/**
+ * Bounded LRU cache of ad-hoc query templates keyed on the query text as sent,
+ * a repeated query skips the normalization and the scan of its parameters.
+ * Normalized texts are what Hibernate's query plan cache and the database's
+ * prepared statements see, so the queries differing only in whitespace and
+ * comments share them; parameter values are bound, never concatenated
+ */
+@Component
+public class QueryTemplates {
+	private static final ConversionService conversionService = createConversionService();
+
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final Map<String, QueryTemplate> templates;
+
+	public record QueryTemplate(QueryType type, String text, Set<String> parameterNames) {
+	}
+
+	public QueryTemplates(@Value("${app.query.templates.max-size:500}") int maxSize) {
+		templates = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, QueryTemplate> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	private static ConversionService createConversionService() {
+		DefaultFormattingConversionService res = new DefaultFormattingConversionService(false);
+		DateTimeFormatterRegistrar registrar = new DateTimeFormatterRegistrar();
+		registrar.setUseIsoFormat(true);
+		registrar.registerFormatters(res);
+		return res;
+	}
+
+	public QueryTemplate get(QueryDto queryDto) {
+		QueryType type = queryDto.type() == null ? QueryType.SQL : queryDto.type();
+		String key = type + ":" + queryDto.query();
+		QueryTemplate res = templates.get(key);
+		if (res != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			Set<String> parameterNames = new LinkedHashSet<>();
+			String text = normalize(queryDto.query(), parameterNames);
+			res = new QueryTemplate(type, text, Collections.unmodifiableSet(parameterNames));
+			templates.put(key, res);
+		}
+		return res;
+	}
+
+	/**
+	 * binds the given parameter values converting them to the parameter types
+	 * known for the query (JPQL queries only)
+	 */
+	public void bindParameters(Query query, QueryTemplate template, Map<String, Object> values) {
+		Map<String, Object> parameters = values == null ? Collections.emptyMap() : values;
+		for (String name : parameters.keySet()) {
+			if (!template.parameterNames().contains(name)) {
+				throw new IllegalArgumentException(UNKNOWN_QUERY_PARAMETER + name);
+			}
+		}
+		for (String name : template.parameterNames()) {
+			if (!parameters.containsKey(name)) {
+				throw new IllegalArgumentException(MISSING_QUERY_PARAMETER + name);
+			}
+			Object value = parameters.get(name);
+			Class<?> type = getParameterType(query, template, name);
+			if (value != null && type != null && !type.isInstance(value)) {
+				value = conversionService.convert(value, type);
+			}
+			query.setParameter(name, value);
+		}
+	}
+
+	private Class<?> getParameterType(Query query, QueryTemplate template, String name) {
+		Class<?> res = null;
+		if (template.type() == QueryType.JPQL) {
+			Parameter<?> parameter = query.getParameter(name);
+			res = parameter.getParameterType();
+		}
+		return res;
+	}
+
+	/**
+	 * strips the comments and collapses whitespace outside of string literals and
+	 * quoted identifiers, which are kept as they are, and collects names of the
+	 * named parameters
+	 */
+	static String normalize(String query, Set<String> parameterNames) {
+		StringBuilder res = new StringBuilder(query.length());
+		char quote = 0;
+		boolean pendingSpace = false;
+		int length = query.length();
+		for (int i = 0; i < length; i++) {
+			char c = query.charAt(i);
+			if (quote != 0) {
+				res.append(c);
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (query.startsWith("--", i)) {
+				int end = query.indexOf('\n', i);
+				i = end < 0 ? length : end;
+				pendingSpace = res.length() > 0;
+			} else if (query.startsWith("/*", i)) {
+				int end = query.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 1;
+				pendingSpace = res.length() > 0;
+			} else if (Character.isWhitespace(c)) {
+				pendingSpace = res.length() > 0;
+			} else {
+				if (pendingSpace) {
+					res.append(' ');
+					pendingSpace = false;
+				}
+				res.append(c);
+				if (c == '\'' || c == '"') {
+					quote = c;
+				} else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(query.charAt(i + 1))
+						&& (i == 0 || query.charAt(i - 1) != ':')) {
+					int end = i + 1;
+					while (end < length && Character.isJavaIdentifierPart(query.charAt(end))) {
+						end++;
+					}
+					parameterNames.add(query.substring(i + 1, end));
+				}
+			}
+		}
+		return res.toString();
+	}
+
+	public CacheStatsDto getStats() {
+		return CacheStatsDto.of(hits.sum(), misses.sum(), templates.size());
+	}
+}
@@ -0,0 +1,220 @@
+package telran.cars.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import static telran.cars.api.ServiceExceptionMessages.*;
+import static telran.cars.api.ValidationConstants.*;
+import telran.cars.dto.*;
+import telran.cars.repo.*;
+import telran.cars.service.model.*;
+
+/**
+ * Streams a CSV file of trade deals (car number, person ID, date; empty person
+ * ID means the car has no owner after the deal) into the database. Lines are
+ * committed in chunks together with the import checkpoint, the owners of the
+ * cars are set according to their latest deals in one update after the last
+ * chunk, then the owner ages index is rebuilt and the fleet snapshot is
+ * reloaded
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TradeDealsImporter {
+	final CarRepo carRepo;
+	final CarOwnerRepo carOwnerRepo;
+	final TradeDealsImportRepo tradeDealsImportRepo;
+	final ModelCounterRepo modelCounterRepo;
+	final ModelMonthDealsRepo modelMonthDealsRepo;
+	final OwnerAgesIndex ownerAgesIndex;
+	final FleetSnapshot fleetSnapshot;
+	final EntityManager em;
+	final Validator validator;
+	final TransactionTemplate transactionTemplate;
+
+	@Value("${app.trade-deals.import.chunk-size:1000}")
+	int chunkSize;
+
+	record Line(long number, String text) {
+	}
+
+	record ParsedDeal(long lineNumber, String carNumber, Long personId, LocalDate date) {
+	}
+
+	public TradeDealsImportDto importTradeDeals(String importName, InputStream input) {
+		TradeDealsImport checkpoint = transactionTemplate.execute(status -> tradeDealsImportRepo.findById(importName)
+				.orElseGet(() -> tradeDealsImportRepo.save(new TradeDealsImport(importName))));
+		if (checkpoint.isCompleted()) {
+			log.warn("import {} has been already completed", importName);
+			return checkpoint.build();
+		}
+		long linesProcessed = checkpoint.getLinesProcessed();
+		if (linesProcessed > 0) {
+			log.info("import {} resumes after line {}", importName, linesProcessed);
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+			List<Line> chunk = new ArrayList<>(chunkSize);
+			long lineNumber = 0;
+			String text;
+			while ((text = reader.readLine()) != null) {
+				lineNumber++;
+				if (lineNumber > linesProcessed && !text.isBlank() && !isHeader(lineNumber, text)) {
+					chunk.add(new Line(lineNumber, text));
+					if (chunk.size() == chunkSize) {
+						commitChunk(importName, chunk, lineNumber);
+						chunk.clear();
+					}
+				}
+			}
+			if (lineNumber > linesProcessed) {
+				commitChunk(importName, chunk, lineNumber);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		TradeDealsImportDto res = transactionTemplate.execute(status -> complete(importName));
+		if (fleetSnapshot.isReady()) {
+			// owners have been changed by the bulk update
+			fleetSnapshot.load();
+		}
+		return res;
+	}
+
+	private boolean isHeader(long lineNumber, String text) {
+		return lineNumber == 1 && !Character.isDigit(text.strip().charAt(0));
+	}
+
+	private void commitChunk(String importName, List<Line> chunk, long lastLineNumber) {
+		transactionTemplate.executeWithoutResult(status -> {
+			TradeDealsImport checkpoint = tradeDealsImportRepo.findById(importName).orElseThrow();
+			List<ParsedDeal> deals = new ArrayList<>(chunk.size());
+			long rejected = 0;
+			for (Line line : chunk) {
+				try {
+					deals.add(parse(line));
+				} catch (IllegalArgumentException e) {
+					rejectLine(importName, line.number(), e.getMessage());
+					rejected++;
+				}
+			}
+			Map<String, String> carModelNames = getCarModelNames(deals);
+			Set<Long> personIds = getExistingPersonIds(deals);
+			Map<String, Long> modelDeals = new HashMap<>();
+			Map<ModelMonth, Long> modelMonthDeals = new HashMap<>();
+			long imported = 0;
+			Long firstDealId = null;
+			for (ParsedDeal deal : deals) {
+				String modelName = carModelNames.get(deal.carNumber());
+				String error = modelName == null ? CAR_NOT_FOUND
+						: deal.personId() != null && !personIds.contains(deal.personId()) ? PERSON_NOT_FOUND : null;
+				if (error != null) {
+					rejectLine(importName, deal.lineNumber(), error);
+					rejected++;
+				} else {
+					TradeDeal tradeDeal = persistTradeDeal(deal);
+					if (firstDealId == null) {
+						firstDealId = tradeDeal.getId();
+					}
+					modelDeals.merge(modelName, 1l, Long::sum);
+					modelMonthDeals.merge(new ModelMonth(modelName, deal.date().getYear(), deal.date().getMonthValue()),
+							1l, Long::sum);
+					imported++;
+				}
+			}
+			modelDeals.forEach((name, count) -> modelCounterRepo.addCounts(name, 0, count));
+			modelMonthDeals.forEach((modelMonth, count) -> modelMonthDealsRepo.addDeals(modelMonth.getName(),
+					LocalDate.of(modelMonth.getYear(), modelMonth.getMonth(), 1), count));
+			checkpoint.setLinesProcessed(lastLineNumber);
+			checkpoint.setDealsImported(checkpoint.getDealsImported() + imported);
+			checkpoint.setLinesRejected(checkpoint.getLinesRejected() + rejected);
+			if (checkpoint.getFirstDealId() == null) {
+				checkpoint.setFirstDealId(firstDealId);
+			}
+			em.flush();
+			em.clear();
+			log.debug("import {}: lines up to {} have been committed, {} deals imported, {} lines rejected",
+					importName, lastLineNumber, imported, rejected);
+		});
+	}
+
+	private ParsedDeal parse(Line line) {
+		String[] fields = line.text().split(",", -1);
+		if (fields.length != 3) {
+			throw new IllegalArgumentException(WRONG_TRADE_DEAL_LINE_MESSAGE);
+		}
+		String personId = fields[1].strip();
+		String date = fields[2].strip();
+		if (date.isEmpty()) {
+			throw new IllegalArgumentException(MISSING_TRADE_DEAL_DATE_MESSAGE);
+		}
+		TradeDealDto tradeDealDto = new TradeDealDto(fields[0].strip(),
+				personId.isEmpty() ? null : Long.valueOf(personId), date);
+		Set<ConstraintViolation<TradeDealDto>> violations = validator.validate(tradeDealDto);
+		if (!violations.isEmpty()) {
+			throw new IllegalArgumentException(
+					violations.stream().map(ConstraintViolation::getMessage).collect(Collectors.joining(";")));
+		}
+		try {
+			return new ParsedDeal(line.number(), tradeDealDto.carNumber(), tradeDealDto.personId(),
+					LocalDate.parse(date));
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException(WRONG_DATE_FORMAT);
+		}
+	}
+
+	private Map<String, String> getCarModelNames(List<ParsedDeal> deals) {
+		Set<String> carNumbers = deals.stream().map(ParsedDeal::carNumber).collect(Collectors.toSet());
+		return carNumbers.isEmpty() ? Collections.emptyMap()
+				: carRepo.findModelNames(carNumbers).stream()
+						.collect(Collectors.toMap(CarModelName::getNumber, CarModelName::getModelName));
+	}
+
+	private Set<Long> getExistingPersonIds(List<ParsedDeal> deals) {
+		Set<Long> personIds = deals.stream().map(ParsedDeal::personId).filter(Objects::nonNull)
+				.collect(Collectors.toSet());
+		return personIds.isEmpty() ? personIds : new HashSet<>(carOwnerRepo.findExistingIds(personIds));
+	}
+
+	private TradeDeal persistTradeDeal(ParsedDeal deal) {
+		TradeDeal tradeDeal = new TradeDeal();
+		tradeDeal.setCar(em.getReference(Car.class, deal.carNumber()));
+		tradeDeal.setCarOwner(deal.personId() == null ? null : em.getReference(CarOwner.class, deal.personId()));
+		tradeDeal.setDate(deal.date());
+		em.persist(tradeDeal);
+		return tradeDeal;
+	}
+
+	private void rejectLine(String importName, long lineNumber, String message) {
+		log.warn("import {}: line {} has been rejected: {}", importName, lineNumber, message);
+	}
+
+	private TradeDealsImportDto complete(String importName) {
+		TradeDealsImport checkpoint = tradeDealsImportRepo.findById(importName).orElseThrow();
+		if (checkpoint.getFirstDealId() != null) {
+			// versions of both the previous and the new owners are incremented
+			carOwnerRepo.incrementVersionsByDeals(checkpoint.getFirstDealId());
+			int nCars = carRepo.updateOwnersByLatestDeals(checkpoint.getFirstDealId());
+			carOwnerRepo.incrementVersionsByDeals(checkpoint.getFirstDealId());
+			log.debug("import {}: owners of {} cars have been updated", importName, nCars);
+			// owners are changed by one bulk update, so the index is rebuilt rather than adjusted car by car
+			ownerAgesIndex.rebuild();
+		}
+		checkpoint.setCompleted(true);
+		log.info("import {} has been completed: {} deals imported, {} lines rejected", importName,
+				checkpoint.getDealsImported(), checkpoint.getLinesRejected());
+		return checkpoint.build();
+	}
+}
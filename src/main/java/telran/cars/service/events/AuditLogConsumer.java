@@ -0,0 +1,24 @@
+package telran.cars.service.events;
+
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Component
+@Slf4j
+public class AuditLogConsumer implements CarsEventsConsumer {
+
+	@Override
+	public void accept(List<CarsEvent> batch) {
+		if (log.isDebugEnabled()) {
+			batch.forEach(event -> log.debug("{}", event));
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "audit-log";
+	}
+}
@@ -0,0 +1,24 @@
+package telran.cars.service.events;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * committed change of the cars: person ID and date are of a trade deal (null
+ * person ID means the car has no owner after the deal), model name is of an
+ * added or a deleted car
+ */
+public record CarsEvent(CarsEventType type, String carNumber, Long personId, LocalDate date, String modelName,
+		Instant time) {
+	public static CarsEvent tradeDeal(String carNumber, Long personId, LocalDate date) {
+		return new CarsEvent(CarsEventType.TRADE_DEAL, carNumber, personId, date, null, Instant.now());
+	}
+
+	public static CarsEvent carAdded(String carNumber, String modelName) {
+		return new CarsEvent(CarsEventType.CAR_ADDED, carNumber, null, null, modelName, Instant.now());
+	}
+
+	public static CarsEvent carDeleted(String carNumber, String modelName) {
+		return new CarsEvent(CarsEventType.CAR_DELETED, carNumber, null, null, modelName, Instant.now());
+	}
+}
@@ -0,0 +1,5 @@
+package telran.cars.service.events;
+
+public enum CarsEventType {
+	TRADE_DEAL, CAR_ADDED, CAR_DELETED
+}
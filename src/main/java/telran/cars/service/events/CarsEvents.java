@@ -0,0 +1,149 @@
+package telran.cars.service.events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes cars events after commit of the transactions into the ring buffer
+ * and drains the buffer by batches on a dedicated thread per consumer. The
+ * request threads never run the consumers; if the slowest consumer keeps the
+ * buffer full longer than the publish timeout, the event is dropped and
+ * counted. An exception of a consumer is logged and its batch isn't retried
+ */
+@Component
+@Slf4j
+public class CarsEvents implements SmartLifecycle {
+	final RingBuffer<CarsEvent> ringBuffer;
+	final List<ConsumerWorker> workers = new ArrayList<>();
+	final LongAdder published = new LongAdder();
+	final LongAdder dropped = new LongAdder();
+	final long publishTimeoutMillis;
+	final int maxBatchSize;
+	final long idleParkNanos;
+	volatile boolean running;
+
+	class ConsumerWorker implements Runnable {
+		final CarsEventsConsumer consumer;
+		final RingBuffer<CarsEvent>.Consumer position;
+		final LongAdder consumed = new LongAdder();
+		final LongAdder failed = new LongAdder();
+		Thread thread;
+
+		ConsumerWorker(CarsEventsConsumer consumer) {
+			this.consumer = consumer;
+			position = ringBuffer.newConsumer();
+		}
+
+		@Override
+		public void run() {
+			List<CarsEvent> batch = new ArrayList<>(maxBatchSize);
+			// the events published before the stop are drained
+			while (running || position.lag() > 0) {
+				int nEvents = position.poll(batch, maxBatchSize);
+				if (nEvents == 0) {
+					LockSupport.parkNanos(idleParkNanos);
+				} else {
+					try {
+						consumer.accept(batch);
+					} catch (RuntimeException e) {
+						failed.add(nEvents);
+						log.error("consumer {} has failed on batch of {} events: {}", consumer.getName(), nEvents,
+								e.toString());
+					}
+					batch.clear();
+					position.commit(nEvents);
+					consumed.add(nEvents);
+				}
+			}
+		}
+	}
+
+	public CarsEvents(List<CarsEventsConsumer> consumers, @Value("${app.events.buffer-size:8192}") int bufferSize,
+			@Value("${app.events.publish-timeout-millis:10}") long publishTimeoutMillis,
+			@Value("${app.events.max-batch-size:256}") int maxBatchSize,
+			@Value("${app.events.idle-park-micros:500}") long idleParkMicros) {
+		ringBuffer = new RingBuffer<>(bufferSize);
+		this.publishTimeoutMillis = publishTimeoutMillis;
+		this.maxBatchSize = maxBatchSize;
+		idleParkNanos = TimeUnit.MICROSECONDS.toNanos(idleParkMicros);
+		consumers.forEach(consumer -> workers.add(new ConsumerWorker(consumer)));
+	}
+
+	public void publishAfterCommit(CarsEvent event) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					publish(event);
+				}
+			});
+		} else {
+			publish(event);
+		}
+	}
+
+	public void publish(CarsEvent event) {
+		if (ringBuffer.offer(event, publishTimeoutMillis, TimeUnit.MILLISECONDS)) {
+			published.increment();
+		} else {
+			dropped.increment();
+			log.debug("events buffer is full, event {} has been dropped", event);
+		}
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		workers.forEach(worker -> {
+			worker.thread = new Thread(worker, "cars-events-" + worker.consumer.getName());
+			worker.thread.setDaemon(true);
+			worker.thread.start();
+		});
+		log.info("events buffer of {} events has been started with {} consumers", ringBuffer.capacity(),
+				workers.size());
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		for (ConsumerWorker worker : workers) {
+			if (worker.thread == null) {
+				continue;
+			}
+			try {
+				worker.thread.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		log.info("events buffer has been stopped, {} events published, {} dropped", published.sum(), dropped.sum());
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	public long getPublished() {
+		return published.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public long getRemainingCapacity() {
+		return ringBuffer.remainingCapacity();
+	}
+}
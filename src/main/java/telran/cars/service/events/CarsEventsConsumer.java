@@ -0,0 +1,16 @@
+package telran.cars.service.events;
+
+import java.util.List;
+
+/**
+ * Downstream work of the committed cars changes (aggregates, notifications,
+ * audit). Each consumer bean receives every published event in batches on its
+ * own thread; the batch list is reused after the call
+ */
+public interface CarsEventsConsumer {
+	void accept(List<CarsEvent> batch);
+
+	default String getName() {
+		return getClass().getSimpleName();
+	}
+}
@@ -0,0 +1,36 @@
+package telran.cars.service.events;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Back-pressure of the cars events: published and dropped events, remaining
+ * capacity of the buffer, consumed and failed events and lag of each consumer
+ * tagged with the consumer name
+ */
+@Component
+@RequiredArgsConstructor
+public class CarsEventsMetrics implements MeterBinder {
+	final CarsEvents carsEvents;
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("cars.events.published", carsEvents, CarsEvents::getPublished).register(registry);
+		FunctionCounter.builder("cars.events.dropped", carsEvents, CarsEvents::getDropped).register(registry);
+		Gauge.builder("cars.events.buffer.remaining", carsEvents, CarsEvents::getRemainingCapacity)
+				.register(registry);
+		carsEvents.workers.forEach(worker -> {
+			String name = worker.consumer.getName();
+			FunctionCounter.builder("cars.events.consumed", worker, w -> w.consumed.sum()).tag("consumer", name)
+					.register(registry);
+			FunctionCounter.builder("cars.events.failed", worker, w -> w.failed.sum()).tag("consumer", name)
+					.register(registry);
+			Gauge.builder("cars.events.lag", worker, w -> w.position.lag()).tag("consumer", name).register(registry);
+		});
+	}
+}
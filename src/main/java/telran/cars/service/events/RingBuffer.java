@@ -0,0 +1,134 @@
+package telran.cars.service.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring buffer of many producers and many consumers, each
+ * consumer receives every published item. A producer claims the next sequence
+ * by CAS of the cursor, writes the item to the slot of the sequence and marks
+ * the slot as published by the sequence. A sequence may be claimed only if
+ * the slowest consumer has already consumed the item that was in its slot,
+ * otherwise the buffer is full
+ */
+public class RingBuffer<T> {
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	final int capacity;
+	final int mask;
+	final AtomicReferenceArray<T> items;
+	// sequence of the item written to each slot, -1 for a never written slot
+	final AtomicLongArray published;
+	// last claimed sequence
+	final AtomicLong cursor = new AtomicLong(-1);
+	final List<Consumer> consumers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * position of a consumer in the buffer, used by one thread
+	 */
+	public class Consumer {
+		// last consumed sequence
+		final AtomicLong sequence = new AtomicLong(-1);
+
+		/**
+		 * adds the published items following the consumed ones, up to the given
+		 * number, to the batch; returns number of the added items
+		 */
+		public int poll(List<T> batch, int maxItems) {
+			long first = sequence.get() + 1;
+			long next = first;
+			while (next - first < maxItems && published.get(index(next)) == next) {
+				batch.add(items.get(index(next)));
+				next++;
+			}
+			return (int) (next - first);
+		}
+
+		// releases the slots of the polled items to the producers
+		public void commit(int nItems) {
+			if (nItems > 0) {
+				sequence.addAndGet(nItems);
+			}
+		}
+
+		public long lag() {
+			return cursor.get() - sequence.get();
+		}
+	}
+
+	public RingBuffer(int minCapacity) {
+		capacity = Integer.highestOneBit(Math.max(2, minCapacity) * 2 - 1);
+		mask = capacity - 1;
+		items = new AtomicReferenceArray<>(capacity);
+		published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			published.set(i, -1);
+		}
+	}
+
+	/**
+	 * new consumer receives the items published after its creation
+	 */
+	public Consumer newConsumer() {
+		Consumer res = new Consumer();
+		res.sequence.set(cursor.get());
+		consumers.add(res);
+		return res;
+	}
+
+	/**
+	 * publishes the item, waits up to the given timeout for the slowest consumer
+	 * if the buffer is full; returns false if the item has not been published
+	 */
+	public boolean offer(T item, long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long sequence;
+		while ((sequence = tryClaim()) < 0) {
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		items.set(index(sequence), item);
+		published.set(index(sequence), sequence);
+		return true;
+	}
+
+	private long tryClaim() {
+		while (true) {
+			long current = cursor.get();
+			long next = current + 1;
+			if (next - capacity > minConsumedSequence()) {
+				return -1;
+			}
+			if (cursor.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	private long minConsumedSequence() {
+		long res = cursor.get();
+		for (Consumer consumer : consumers) {
+			res = Math.min(res, consumer.sequence.get());
+		}
+		return res;
+	}
+
+	private int index(long sequence) {
+		return (int) sequence & mask;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public long remainingCapacity() {
+		return capacity - (cursor.get() - minConsumedSequence());
+	}
+}
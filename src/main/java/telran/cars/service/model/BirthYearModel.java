@@ -0,0 +1,25 @@
+package telran.cars.service.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+@Embeddable
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class BirthYearModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "birth_year")
+	int birthYear;
+
+	@Column(name = "model_name")
+	String modelName;
+
+	@Column(name = "model_year")
+	int modelYear;
+
+}
@@ -0,0 +1,21 @@
+package telran.cars.service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * number of cars of a model, owners of which were born in a year, maintained
+ * by the service write paths in the same transactions as the cars owners
+ */
+@Entity
+@Table(name = "birth_year_model_cars")
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BirthYearModelCars {
+	@EmbeddedId
+	BirthYearModel birthYearModel;
+
+	@Column(name = "cars_count", nullable = false)
+	long carsCount;
+}
@@ -6,6 +6,8 @@ import lombok.Setter;
 import telran.cars.dto.CarDto;
 import telran.cars.dto.CarState;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
@@ -15,19 +17,21 @@ import jakarta.persistence.*;
 @Getter
 @NoArgsConstructor
 @Table(name = "cars")
+// the cached state keeps the keys of the model and of the owner, which are resolved from their regions
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "cars")
 public class Car {
 	@Id
 	@Column(name = "car_number")
 	String number;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumns({ @JoinColumn(name = "model_name", nullable = false),
 			@JoinColumn(name = "model_year", nullable = false) })
 	@Setter
 	@OnDelete(action = OnDeleteAction.CASCADE)
 	Model model;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@Setter
 	@JoinColumn(name = "owner_id", nullable = true)
 	@OnDelete(action = OnDeleteAction.SET_NULL)
@@ -42,6 +46,11 @@ public class Car {
 	@Column(name = "car_state")
 	CarState state;
 
+	// optimistic locking of concurrent trade deals of the car
+	@Version
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	long version;
+
 	private Car(String number, String color, Integer kilometers, CarState state) {
 
 		this.number = number;
@@ -60,6 +69,8 @@ public class Car {
 	}
 
 	public CarDto build() {
-		return new CarDto(number, model.modelYear.getName(), model.modelYear.getYear(), color, kilometers, state);
+		// model's key is taken by the getter, that doesn't initialize a lazy reference
+		ModelYear modelYear = model.getModelYear();
+		return new CarDto(number, modelYear.getName(), modelYear.getYear(), color, kilometers, state);
 	}
 }
\ No newline at end of file
@@ -2,6 +2,9 @@ package telran.cars.service.model;
 
 import java.time.LocalDate;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -14,6 +17,7 @@ import jakarta.persistence.*;
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 @Entity
 @Table(name = "car_owners")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "car-owners")
 public class CarOwner {
 	@Id
 	Long id;
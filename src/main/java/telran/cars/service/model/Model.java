@@ -1,11 +1,16 @@
 package telran.cars.service.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import jakarta.persistence.*;
 import lombok.*;
 import telran.cars.dto.ModelDto;
 
 @Entity
 @Table(name = "models")
+// models are never updated
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "models")
 @Getter
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
 @NoArgsConstructor
@@ -0,0 +1,25 @@
+package telran.cars.service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * numbers of cars and trade deals of a model name, maintained by the service
+ * write paths in the same transactions as the cars and the trade deals
+ */
+@Entity
+@Table(name = "model_counters")
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ModelCounter {
+	@Id
+	@Column(name = "model_name")
+	String name;
+
+	@Column(name = "cars_count", nullable = false)
+	long carsCount;
+
+	@Column(name = "deals_count", nullable = false)
+	long dealsCount;
+}
@@ -0,0 +1,25 @@
+package telran.cars.service.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+@Embeddable
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class ModelMonth implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	@Column(name = "model_name")
+	String name;
+
+	@Column(name = "deal_year")
+	int year;
+
+	@Column(name = "deal_month")
+	int month;
+
+}
@@ -0,0 +1,21 @@
+package telran.cars.service.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * number of trade deals of a model name in a month, maintained by the service
+ * write paths in the same transactions as the trade deals
+ */
+@Entity
+@Table(name = "model_month_deals")
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ModelMonthDeals {
+	@EmbeddedId
+	ModelMonth modelMonth;
+
+	@Column(name = "deals_count", nullable = false)
+	long dealsCount;
+}
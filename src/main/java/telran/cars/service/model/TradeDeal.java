@@ -13,17 +13,21 @@ import lombok.Setter;
 @Table(name = "trade_deals")
 @Getter
 public class TradeDeal {
+	// pooled sequence keeps JDBC insert batching enabled (IDENTITY disables it);
+	// ids below the initial value are left for the seed data script, the ids of an existing
+	// database are skipped by the V8 migration
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trade_deals_seq")
+	@SequenceGenerator(name = "trade_deals_seq", sequenceName = "trade_deals_seq", initialValue = 100, allocationSize = 50)
 	long id;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "car_number", nullable = false)
 	@Setter
 	@OnDelete(action = OnDeleteAction.CASCADE)
 	Car car;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "owner_id")
 	@Setter
 	@OnDelete(action = OnDeleteAction.SET_NULL)
@@ -0,0 +1,45 @@
+package telran.cars.service.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import telran.cars.dto.TradeDealsImportDto;
+
+/**
+ * checkpoint of a trade deals file import: lines up to 'linesProcessed' are
+ * committed, so an interrupted import resumes right after them
+ */
+@Entity
+@Table(name = "trade_deals_imports")
+@Getter
+@Setter
+@NoArgsConstructor
+public class TradeDealsImport {
+	@Id
+	@Column(name = "import_name")
+	String importName;
+
+	@Column(name = "lines_processed", nullable = false)
+	long linesProcessed;
+
+	@Column(name = "deals_imported", nullable = false)
+	long dealsImported;
+
+	@Column(name = "lines_rejected", nullable = false)
+	long linesRejected;
+
+	@Column(name = "first_deal_id")
+	Long firstDealId;
+
+	@Column(nullable = false)
+	boolean completed;
+
+	public TradeDealsImport(String importName) {
+		this.importName = importName;
+	}
+
+	public TradeDealsImportDto build() {
+		return new TradeDealsImportDto(importName, linesProcessed, dealsImported, linesRejected, completed);
+	}
+}
@@ -0,0 +1,26 @@
+package telran.cars.tracing;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Completed trace of a request; a request that has been neither sampled nor
+ * slow has no spans
+ */
+public record RecordedTrace(long id, String name, Instant start, int status, long durationMicros, boolean sampled,
+		List<Span> spans, int droppedSpans) {
+
+	// one line of key=value pairs with the totals of the SQL statements
+	public String toLogLine() {
+		long nSql = 0;
+		long sqlMicros = 0;
+		for (Span span : spans) {
+			if (span.kind() == SpanKind.SQL) {
+				nSql++;
+				sqlMicros += span.durationMicros();
+			}
+		}
+		return "trace id=%d name=\"%s\" status=%d duration_us=%d sampled=%b spans=%d dropped_spans=%d sql=%d sql_us=%d"
+				.formatted(id, name, status, durationMicros, sampled, spans.size(), droppedSpans, nSql, sqlMicros);
+	}
+}
@@ -0,0 +1,5 @@
+package telran.cars.tracing;
+
+// start is the offset from the start of the trace
+public record Span(SpanKind kind, String name, long startMicros, long durationMicros, boolean error) {
+}
@@ -0,0 +1,5 @@
+package telran.cars.tracing;
+
+public enum SpanKind {
+	CONTROLLER, SERVICE, SQL
+}
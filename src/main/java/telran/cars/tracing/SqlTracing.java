@@ -0,0 +1,50 @@
+package telran.cars.tracing;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * SQL spans of the Hibernate sessions: the inspector keeps text of the
+ * statement being prepared and the session listener times its execution. The
+ * statements are recorded without bound values
+ */
+public class SqlTracing {
+	private SqlTracing() {
+	}
+
+	public static class Inspector implements StatementInspector {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String inspect(String sql) {
+			Tracer.prepareSql(sql);
+			return sql;
+		}
+	}
+
+	// created by Hibernate for each session
+	public static class Listener implements SessionEventListener {
+		private static final long serialVersionUID = 1L;
+		private long start;
+
+		@Override
+		public void jdbcExecuteStatementStart() {
+			start = System.nanoTime();
+		}
+
+		@Override
+		public void jdbcExecuteStatementEnd() {
+			Tracer.addSqlSpan(start);
+		}
+
+		@Override
+		public void jdbcExecuteBatchStart() {
+			start = System.nanoTime();
+		}
+
+		@Override
+		public void jdbcExecuteBatchEnd() {
+			Tracer.addSqlSpan(start);
+		}
+	}
+}
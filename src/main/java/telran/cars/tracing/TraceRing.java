@@ -0,0 +1,39 @@
+package telran.cars.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free ring of the latest traces, a new trace overwrites the oldest one.
+ * A snapshot taken during concurrent writes may miss the traces being written
+ */
+class TraceRing {
+	final AtomicReferenceArray<RecordedTrace> traces;
+	final AtomicLong next = new AtomicLong();
+	final int mask;
+
+	TraceRing(int minCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(2, minCapacity) * 2 - 1);
+		traces = new AtomicReferenceArray<>(capacity);
+		mask = capacity - 1;
+	}
+
+	void add(RecordedTrace trace) {
+		traces.set((int) next.getAndIncrement() & mask, trace);
+	}
+
+	List<RecordedTrace> snapshot() {
+		long last = next.get() - 1;
+		long first = Math.max(0, last - mask);
+		List<RecordedTrace> res = new ArrayList<>((int) (last - first + 1));
+		for (long i = last; i >= first; i--) {
+			RecordedTrace trace = traces.get((int) i & mask);
+			if (trace != null) {
+				res.add(trace);
+			}
+		}
+		return res;
+	}
+}
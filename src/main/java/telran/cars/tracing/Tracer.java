@@ -0,0 +1,198 @@
+package telran.cars.tracing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sampled tracing of the requests handled by a thread. Every request buffers
+ * the spans of the controller, of the service and of each SQL statement in
+ * arrays reused by the requests of the thread; the spans are kept only for a
+ * sampled request or for a slow one, so a slow trace can be diagnosed even if
+ * it hasn't been sampled. Traces of the sampled requests and of the slow ones
+ * are kept in rings overwriting the oldest traces, a slow trace is also logged
+ * as one line
+ */
+@Component
+@Slf4j
+public class Tracer {
+	private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+	private static final int MAX_SQL_LENGTH = 200;
+	private static final int INITIAL_SPANS = 16;
+
+	final double sampleRate;
+	final long slowThresholdNanos;
+	final int maxSpans;
+	final TraceRing sampled;
+	final TraceRing slow;
+	final AtomicLong ids = new AtomicLong();
+	final ThreadLocal<SpanBuffer> buffers;
+
+	static class Trace {
+		final long id;
+		final Instant start = Instant.now();
+		final long startNanos = System.nanoTime();
+		final boolean sampled;
+		final SpanBuffer spans;
+		// statement prepared last, named by its following execution
+		String sql;
+
+		Trace(long id, boolean sampled, SpanBuffer spans) {
+			this.id = id;
+			this.sampled = sampled;
+			this.spans = spans;
+		}
+	}
+
+	/**
+	 * spans of the running trace as parallel arrays growing up to the maximal
+	 * number of spans, turned into span records only for a kept trace
+	 */
+	static class SpanBuffer {
+		final int maxSpans;
+		SpanKind[] kinds;
+		String[] names;
+		long[] starts;
+		long[] ends;
+		boolean[] errors;
+		int size;
+		int droppedSpans;
+
+		SpanBuffer(int maxSpans) {
+			this.maxSpans = maxSpans;
+			int capacity = Math.min(INITIAL_SPANS, maxSpans);
+			kinds = new SpanKind[capacity];
+			names = new String[capacity];
+			starts = new long[capacity];
+			ends = new long[capacity];
+			errors = new boolean[capacity];
+		}
+
+		void add(SpanKind kind, String name, long startNanos, long endNanos, boolean error) {
+			if (size == maxSpans) {
+				droppedSpans++;
+				return;
+			}
+			if (size == kinds.length) {
+				int capacity = Math.min(size * 2, maxSpans);
+				kinds = Arrays.copyOf(kinds, capacity);
+				names = Arrays.copyOf(names, capacity);
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				errors = Arrays.copyOf(errors, capacity);
+			}
+			kinds[size] = kind;
+			names[size] = name;
+			starts[size] = startNanos;
+			ends[size] = endNanos;
+			errors[size] = error;
+			size++;
+		}
+
+		List<Span> toSpans(long traceStartNanos) {
+			List<Span> res = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				String name = names[i];
+				if (kinds[i] == SpanKind.SQL && name != null && name.length() > MAX_SQL_LENGTH) {
+					name = name.substring(0, MAX_SQL_LENGTH);
+				}
+				res.add(new Span(kinds[i], name, toMicros(starts[i] - traceStartNanos), toMicros(ends[i] - starts[i]),
+						errors[i]));
+			}
+			return res;
+		}
+
+		void clear() {
+			Arrays.fill(names, 0, size, null);
+			size = 0;
+			droppedSpans = 0;
+		}
+	}
+
+	public Tracer(@Value("${app.tracing.sample-rate:0.01}") double sampleRate,
+			@Value("${app.tracing.slow-threshold-millis:1000}") long slowThresholdMillis,
+			@Value("${app.tracing.max-spans:256}") int maxSpans,
+			@Value("${app.tracing.buffer-size:256}") int bufferSize) {
+		this.sampleRate = sampleRate;
+		slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+		this.maxSpans = maxSpans;
+		sampled = new TraceRing(bufferSize);
+		slow = new TraceRing(bufferSize);
+		buffers = ThreadLocal.withInitial(() -> new SpanBuffer(maxSpans));
+	}
+
+	/**
+	 * starts the trace of the current thread; returns false if the thread
+	 * already has a trace
+	 */
+	public boolean begin() {
+		if (CURRENT.get() != null) {
+			return false;
+		}
+		boolean isSampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+		CURRENT.set(new Trace(ids.incrementAndGet(), isSampled, buffers.get()));
+		return true;
+	}
+
+	public RecordedTrace end(String name, int status) {
+		Trace trace = CURRENT.get();
+		CURRENT.remove();
+		long durationNanos = System.nanoTime() - trace.startNanos;
+		boolean isSlow = durationNanos >= slowThresholdNanos;
+		List<Span> spans = trace.sampled || isSlow ? trace.spans.toSpans(trace.startNanos) : List.of();
+		RecordedTrace res = new RecordedTrace(trace.id, name, trace.start, status, toMicros(durationNanos),
+				trace.sampled, spans, trace.spans.droppedSpans);
+		trace.spans.clear();
+		if (trace.sampled) {
+			sampled.add(res);
+		}
+		if (isSlow) {
+			slow.add(res);
+			log.info("slow {}", res.toLogLine());
+		}
+		return res;
+	}
+
+	public Traces getTraces() {
+		return new Traces(sampled.snapshot(), slow.snapshot());
+	}
+
+	public static boolean isRecording() {
+		return CURRENT.get() != null;
+	}
+
+	public static void addSpan(SpanKind kind, String name, long startNanos, boolean error) {
+		Trace trace = CURRENT.get();
+		if (trace != null) {
+			trace.spans.add(kind, name, startNanos, System.nanoTime(), error);
+		}
+	}
+
+	// the statement is truncated only if the trace is kept
+	static void prepareSql(String sql) {
+		Trace trace = CURRENT.get();
+		if (trace != null) {
+			trace.sql = sql;
+		}
+	}
+
+	static void addSqlSpan(long startNanos) {
+		Trace trace = CURRENT.get();
+		if (trace != null) {
+			trace.spans.add(SpanKind.SQL, trace.sql, startNanos, System.nanoTime(), false);
+		}
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
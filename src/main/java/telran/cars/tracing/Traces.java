@@ -0,0 +1,7 @@
+package telran.cars.tracing;
+
+import java.util.List;
+
+// recent traces of the sampled requests and of the slow requests, newest first
+public record Traces(List<RecordedTrace> sampled, List<RecordedTrace> slow) {
+}
@@ -0,0 +1,20 @@
+package telran.cars.tracing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+
+// dump of the recent traces at /actuator/traces
+@Component
+@Endpoint(id = "traces")
+@RequiredArgsConstructor
+public class TracesEndpoint {
+	final Tracer tracer;
+
+	@ReadOperation
+	public Traces traces() {
+		return tracer.getTraces();
+	}
+}
@@ -0,0 +1,28 @@
+package telran.cars.tracing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+// spans of the CarsService methods called by the traced requests
+@Aspect
+@Component
+public class TracingAspect {
+
+	@Around("execution(public * telran.cars.service.CarsService.*(..))")
+	public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (!Tracer.isRecording()) {
+			return joinPoint.proceed();
+		}
+		long start = System.nanoTime();
+		boolean error = true;
+		try {
+			Object res = joinPoint.proceed();
+			error = false;
+			return res;
+		} finally {
+			Tracer.addSpan(SpanKind.SERVICE, joinPoint.getSignature().getName(), start, error);
+		}
+	}
+}
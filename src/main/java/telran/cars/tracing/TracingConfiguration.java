@@ -0,0 +1,44 @@
+package telran.cars.tracing;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the request filter and the controller interceptor of the tracer
+ * and the SQL tracing of the Hibernate sessions
+ */
+@Configuration
+public class TracingConfiguration {
+
+	@Bean
+	FilterRegistrationBean<TracingFilter> tracingFilter(Tracer tracer) {
+		FilterRegistrationBean<TracingFilter> res = new FilterRegistrationBean<>(new TracingFilter(tracer));
+		res.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		return res;
+	}
+
+	@Bean
+	WebMvcConfigurer tracingInterceptorConfigurer() {
+		return new WebMvcConfigurer() {
+			@Override
+			public void addInterceptors(InterceptorRegistry registry) {
+				registry.addInterceptor(new TracingInterceptor());
+			}
+		};
+	}
+
+	// a statement inspector or a session listener configured by the properties takes precedence
+	@Bean
+	HibernatePropertiesCustomizer sqlTracingCustomizer() {
+		return properties -> {
+			properties.putIfAbsent(AvailableSettings.STATEMENT_INSPECTOR, new SqlTracing.Inspector());
+			properties.putIfAbsent(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, SqlTracing.Listener.class.getName());
+		};
+	}
+}
@@ -0,0 +1,43 @@
+package telran.cars.tracing;
+
+import java.io.IOException;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Traces each request, the trace is named by the HTTP method and the matched
+ * URL pattern; requests of the actuator aren't traced
+ */
+@RequiredArgsConstructor
+public class TracingFilter extends OncePerRequestFilter {
+	final Tracer tracer;
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return request.getRequestURI().startsWith("/actuator");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		if (!tracer.begin()) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+		try {
+			filterChain.doFilter(request, response);
+			status = response.getStatus();
+		} finally {
+			Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+			tracer.end(request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI()), status);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package telran.cars.tracing;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// span of a controller method including serialization of its result
+public class TracingInterceptor implements HandlerInterceptor {
+	private static final String START_ATTRIBUTE = TracingInterceptor.class.getName() + ".start";
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (Tracer.isRecording()) {
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		if (request.getAttribute(START_ATTRIBUTE) instanceof Long start) {
+			String name = handler instanceof HandlerMethod method ? method.getMethod().getName() : handler.toString();
+			Tracer.addSpan(SpanKind.CONTROLLER, name, start, ex != null || response.getStatus() >= 400);
+		}
+	}
+}
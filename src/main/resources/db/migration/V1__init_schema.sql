@@ -0,0 +1,61 @@
+-- Schema of the entities as previously generated by Hibernate; a database created by ddl-auto=update
+-- is baselined below this version, so the statements only add what such a database may lack
+create sequence if not exists trade_deals_seq start with 100 increment by 50;
+
+create table if not exists models (
+	model_name varchar(255) not null,
+	model_year integer not null,
+	company varchar(255) not null,
+	engine_capacity integer not null,
+	engine_power integer not null,
+	primary key (model_name, model_year)
+);
+
+create table if not exists car_owners (
+	id bigint not null primary key,
+	name varchar(255),
+	email varchar(255),
+	birth_date date not null
+);
+
+create table if not exists cars (
+	car_number varchar(255) not null primary key,
+	model_name varchar(255) not null,
+	model_year integer not null,
+	owner_id bigint,
+	color varchar(255),
+	kilometers integer,
+	car_state varchar(255) check (car_state in ('OLD', 'NEW', 'GOOD', 'MIDDLE', 'BAD')),
+	version bigint default 0 not null,
+	constraint fk_cars_models foreign key (model_name, model_year) references models (model_name, model_year)
+		on delete cascade,
+	constraint fk_cars_car_owners foreign key (owner_id) references car_owners (id) on delete set null
+);
+-- optimistic locking column of the cars created before it
+alter table cars add column if not exists version bigint default 0 not null;
+
+create table if not exists trade_deals (
+	id bigint not null primary key,
+	car_number varchar(255) not null,
+	owner_id bigint,
+	date date,
+	constraint fk_trade_deals_cars foreign key (car_number) references cars (car_number) on delete cascade,
+	constraint fk_trade_deals_car_owners foreign key (owner_id) references car_owners (id) on delete set null
+);
+
+create table if not exists model_counters (
+	model_name varchar(255) not null primary key,
+	cars_count bigint not null,
+	deals_count bigint not null
+);
+create index if not exists idx_model_counters_cars on model_counters (cars_count);
+create index if not exists idx_model_counters_deals on model_counters (deals_count);
+
+create table if not exists trade_deals_imports (
+	import_name varchar(255) not null primary key,
+	lines_processed bigint not null,
+	deals_imported bigint not null,
+	lines_rejected bigint not null,
+	first_deal_id bigint,
+	completed boolean not null
+);
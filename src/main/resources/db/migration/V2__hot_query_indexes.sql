@@ -0,0 +1,14 @@
+-- Cars of an owner ordered by car number (owner's cars, keyset pages of them, owner deletion)
+create index idx_cars_owner_number on cars (owner_id, car_number);
+-- Cars of a model (foreign key to models)
+create index idx_cars_model on cars (model_name, model_year);
+-- Most popular color of a model, grouped by the index order
+create index idx_cars_model_color on cars (model_name, color);
+-- Owners of ages (birth dates range) joined with their cars
+create index idx_car_owners_birth_date on car_owners (birth_date, id);
+-- Trade deals of a car in date order (history pages, latest deal of a car, deletion of a car)
+create index idx_trade_deals_car_date on trade_deals (car_number, date, id);
+-- Trade deals of an owner in date order (history pages, owner deletion)
+create index idx_trade_deals_owner_date on trade_deals (owner_id, date, id);
+-- Trade deals of a period (trade deals of a model in a month)
+create index idx_trade_deals_date on trade_deals (date, car_number);
@@ -0,0 +1,13 @@
+-- Monthly rollup of trade deals per model name, filled from the existing trade deals
+create table model_month_deals (
+	model_name varchar(255) not null,
+	deal_year integer not null,
+	deal_month integer not null,
+	deals_count bigint not null,
+	primary key (model_name, deal_year, deal_month)
+);
+
+insert into model_month_deals (model_name, deal_year, deal_month, deals_count)
+select c.model_name, extract(year from td.date), extract(month from td.date), count(*)
+from trade_deals td join cars c on td.car_number = c.car_number where td.date is not null
+group by c.model_name, extract(year from td.date), extract(month from td.date);
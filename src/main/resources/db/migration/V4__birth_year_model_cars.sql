@@ -0,0 +1,13 @@
+-- Numbers of owned cars per owners birth year and model, filled from the existing cars
+create table birth_year_model_cars (
+	birth_year integer not null,
+	model_name varchar(255) not null,
+	model_year integer not null,
+	cars_count bigint not null,
+	primary key (birth_year, model_name, model_year)
+);
+
+insert into birth_year_model_cars (birth_year, model_name, model_year, cars_count)
+select extract(year from o.birth_date), c.model_name, c.model_year, count(*)
+from cars c join car_owners o on c.owner_id = o.id
+group by extract(year from o.birth_date), c.model_name, c.model_year;
@@ -0,0 +1,5 @@
+-- Trade deals histories of a car and of an owner are read from the indexes only
+drop index idx_trade_deals_car_date;
+create index idx_trade_deals_car_date on trade_deals (car_number, date, id, owner_id);
+drop index idx_trade_deals_owner_date;
+create index idx_trade_deals_owner_date on trade_deals (owner_id, date, id, car_number);
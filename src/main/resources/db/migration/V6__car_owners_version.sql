@@ -0,0 +1,2 @@
+-- Change counter of an owner and of the owner's cars, incremented by the write paths
+alter table car_owners add column version bigint default 0 not null;
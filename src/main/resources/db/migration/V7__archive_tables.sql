@@ -0,0 +1,30 @@
+-- Copies of the rows removed by the bulk deletes, stamped by the time of the removal
+create table cars_archive (
+	car_number varchar(255) not null,
+	model_name varchar(255) not null,
+	model_year integer not null,
+	owner_id bigint,
+	color varchar(255),
+	kilometers integer,
+	car_state varchar(255),
+	archived_at timestamp not null
+);
+create index idx_cars_archive_number on cars_archive (car_number);
+
+create table trade_deals_archive (
+	id bigint not null,
+	car_number varchar(255) not null,
+	owner_id bigint,
+	date date,
+	archived_at timestamp not null
+);
+create index idx_trade_deals_archive_car on trade_deals_archive (car_number);
+
+create table car_owners_archive (
+	id bigint not null,
+	name varchar(255),
+	email varchar(255),
+	birth_date date not null,
+	archived_at timestamp not null
+);
+create index idx_car_owners_archive_id on car_owners_archive (id);
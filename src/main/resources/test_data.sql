@@ -1,3 +1,7 @@
+delete from birth_year_model_cars;
+delete from model_month_deals;
+delete from model_counters;
+delete from trade_deals_imports;
 delete from trade_deals;
 delete from cars;
 delete from car_owners;
@@ -17,7 +21,23 @@ insert into cars (car_number, color, kilometers, car_state, model_name, model_ye
 ('222-11-111', 'silver', 10000, 'OLD', 'model1', 2020, 124),
 ('333-11-111', 'white', 0, 'NEW', 'model4', 2023, 125);
 
-insert into trade_deals ( date, car_number, owner_id) values 
-( '2023-03-10', '111-11-111', 123),
-( '2023-03-24', '222-11-111', 124),
-( '2023-04-01', '333-11-111', 125);
\ No newline at end of file
+insert into trade_deals (id, date, car_number, owner_id) values 
+(1, '2023-03-10', '111-11-111', 123),
+(2, '2023-03-24', '222-11-111', 124),
+(3, '2023-04-01', '333-11-111', 125);
+
+insert into model_counters (model_name, cars_count, deals_count)
+select m.model_name,
+(select count(*) from cars c where c.model_name = m.model_name),
+(select count(*) from trade_deals td join cars c on td.car_number = c.car_number where c.model_name = m.model_name)
+from (select distinct model_name from models) m;
+
+insert into model_month_deals (model_name, deal_year, deal_month, deals_count)
+select c.model_name, extract(year from td.date), extract(month from td.date), count(*)
+from trade_deals td join cars c on td.car_number = c.car_number where td.date is not null
+group by c.model_name, extract(year from td.date), extract(month from td.date);
+
+insert into birth_year_model_cars (birth_year, model_name, model_year, cars_count)
+select extract(year from o.birth_date), c.model_name, c.model_year, count(*)
+from cars c join car_owners o on c.owner_id = o.id
+group by extract(year from o.birth_date), c.model_name, c.model_year;
\ No newline at end of file
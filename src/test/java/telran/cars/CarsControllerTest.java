@@ -2,13 +2,24 @@ package telran.cars;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,10 +27,12 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import telran.cars.controller.CarsController;
 import telran.cars.dto.*;
 import static telran.cars.api.ValidationConstants.*;
 import telran.cars.exceptions.NotFoundException;
@@ -35,6 +48,7 @@ record PersonDtoIdString(String id, String name, String birthDate, String email)
 class CarsControllerTest {
 	private static final long PERSON_ID = 123000l;
 	private static final String CAR_NUMBER = "123-01-002";
+	private static final String CAR_NUMBER_1 = "123-01-003";
 	private static final String PERSON_NOT_FOUND_MESSAGE = "person not found";
 	private static final String PERSON_ALREADY_EXISTS_MESSAGE = "person already exists";
 	private static final String CAR_ALREADY_EXISTS_MESSAGE = "car already exists";
@@ -82,6 +96,18 @@ class CarsControllerTest {
 
 	}
 
+	@Test
+	void testAddCars() throws Exception {
+		List<CarDto> carDtos = List.of(carDto);
+		List<BatchItemResultDto> results = List.of(BatchItemResultDto.ok(CAR_NUMBER));
+		when(carsService.addCars(carDtos)).thenReturn(results);
+		String actualJSON = mockMvc
+				.perform(post("http://localhost:8080/cars/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(carDtos)))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(results), actualJSON);
+	}
+
 	@Test
 	void testAddPerson() throws Exception {
 		when(carsService.addPerson(personDto)).thenReturn(personDto);
@@ -116,6 +142,36 @@ class CarsControllerTest {
 		assertEquals(jsonTradeDeal, actualJSON);
 	}
 
+	@Test
+	void testPurchaseAll() throws Exception {
+		List<TradeDealDto> tradeDeals = List.of(tradeDeal, new TradeDealDto(CAR_NUMBER_1, null, null));
+		when(carsService.purchaseAll(tradeDeals)).thenReturn(tradeDeals);
+		String jsonTradeDeals = mapper.writeValueAsString(tradeDeals);
+		String actualJSON = mockMvc
+				.perform(put("http://localhost:8080/cars/trade/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(jsonTradeDeals))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertEquals(jsonTradeDeals, actualJSON);
+	}
+
+	@Test
+	void testDeleteModelCars() throws Exception {
+		BulkDeleteDto expected = new BulkDeleteDto(2, 3, 2);
+		when(carsService.deleteModelCars("model1", 2020, true)).thenReturn(expected);
+		String actualJSON = mockMvc.perform(delete("http://localhost:8080/cars/models/model1/2020/cars?archive=true"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(expected), actualJSON);
+	}
+
+	@Test
+	void testDeleteOwnersWithoutCars() throws Exception {
+		BulkDeleteDto expected = new BulkDeleteDto(5, 1, 0);
+		when(carsService.deleteOwnersWithoutCars(false)).thenReturn(expected);
+		String actualJSON = mockMvc.perform(delete("http://localhost:8080/cars/person/without-cars"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(expected), actualJSON);
+	}
+
 	@Test
 	void testDeletePerson() throws Exception {
 		when(carsService.deletePerson(PERSON_ID)).thenReturn(personDto);
@@ -138,12 +194,99 @@ class CarsControllerTest {
 	void testGetOwnerCars() throws Exception {
 		CarDto[] expectedArray = { carDto, carDto1 };
 		String jsonExpected = mapper.writeValueAsString(expectedArray);
-		when(carsService.getOwnerCars(PERSON_ID)).thenReturn(Arrays.asList(expectedArray));
+		when(carsService.getOwnerCarsPage(PERSON_ID, null, Integer.parseInt(DEFAULT_PAGE_SIZE)))
+				.thenReturn(new PageDto<>(Arrays.asList(expectedArray), null));
 		String actualJSON = mockMvc.perform(get("http://localhost:8080/cars/person/" + PERSON_ID))
+				.andExpect(status().isOk()).andExpect(header().doesNotExist(CarsController.NEXT_PAGE_TOKEN_HEADER))
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(jsonExpected, actualJSON);
+	}
+
+	@Test
+	void getOwnerCars_NextPageToken() throws Exception {
+		when(carsService.getOwnerCarsPage(PERSON_ID, "token1", 1)).thenReturn(new PageDto<>(List.of(carDto), "token2"));
+		String actualJSON = mockMvc
+				.perform(get("http://localhost:8080/cars/person/" + PERSON_ID + "?token=token1&size=1"))
+				.andExpect(status().isOk()).andExpect(header().string(CarsController.NEXT_PAGE_TOKEN_HEADER, "token2"))
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(List.of(carDto)), actualJSON);
+	}
+
+	@Test
+	void getOwnerCars_NotModified() throws Exception {
+		when(carsService.getOwnerCarsETag(PERSON_ID)).thenReturn("3");
+		String response = mockMvc
+				.perform(get("http://localhost:8080/cars/person/" + PERSON_ID).header("If-None-Match", "\"3\""))
+				.andExpect(status().isNotModified()).andExpect(header().string("ETag", "\"3\"")).andReturn()
+				.getResponse().getContentAsString();
+		assertEquals("", response);
+		verify(carsService, never()).getOwnerCarsPage(anyLong(), any(), anyInt());
+	}
+
+	@Test
+	void getCarOwner_Modified() throws Exception {
+		when(carsService.getCarOwnerETag(CAR_NUMBER)).thenReturn("2-%d-5".formatted(PERSON_ID));
+		when(carsService.getCarOwner(CAR_NUMBER)).thenReturn(personDto);
+		String actualJSON = mockMvc
+				.perform(get("http://localhost:8080/cars/" + CAR_NUMBER).header("If-None-Match",
+						"\"1-%d-5\"".formatted(PERSON_ID)))
+				.andExpect(status().isOk()).andExpect(header().string("ETag", "\"2-%d-5\"".formatted(PERSON_ID)))
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(personDto), actualJSON);
+	}
+
+	@Test
+	void getCarHistory_success() throws Exception {
+		List<TradeDealHistoryDto> expected = List.of(new TradeDealHistoryDto(1l, CAR_NUMBER, PERSON_ID, "2023-03-10"),
+				new TradeDealHistoryDto(2l, CAR_NUMBER, null, "2023-04-10"));
+		String jsonExpected = mapper.writeValueAsString(expected);
+		when(carsService.getCarHistory(CAR_NUMBER)).thenReturn(expected);
+		String actualJSON = mockMvc.perform(get("http://localhost:8080/cars/trade/car/" + CAR_NUMBER + "/history"))
 				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
 		assertEquals(jsonExpected, actualJSON);
 	}
 
+	@Test
+	void getOwnerHistory_PersonNotFound() throws Exception {
+		when(carsService.getOwnerHistory(PERSON_ID)).thenThrow(new NotFoundException(PERSON_NOT_FOUND_MESSAGE));
+		String response = mockMvc.perform(get("http://localhost:8080/cars/trade/person/" + PERSON_ID + "/history"))
+				.andExpect(status().isNotFound()).andReturn().getResponse().getContentAsString();
+		assertEquals(PERSON_NOT_FOUND_MESSAGE, response);
+	}
+
+	@Test
+	void getTradeDealsHistogram_success() throws Exception {
+		List<ModelDealsHistogramDto> expected = List.of(new ModelDealsHistogramDto("model1", "2023-02",
+				List.of(0l, 2l, 1l)));
+		String jsonExpected = mapper.writeValueAsString(expected);
+		when(carsService.tradeDealsHistogram(List.of("model1"), "2023-02", "2023-04")).thenReturn(expected);
+		String actualJSON = mockMvc
+				.perform(get("http://localhost:8080/cars/trade/histogram?models=model1&from=2023-02&to=2023-04"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertEquals(jsonExpected, actualJSON);
+	}
+
+	@Test
+	void getTradeDealsHistogram_WrongMonth() throws Exception {
+		String response = mockMvc
+				.perform(get("http://localhost:8080/cars/trade/histogram?models=model1&from=2023-2&to=2023-04"))
+				.andExpect(status().isBadRequest()).andReturn().getResponse().getContentAsString();
+		assertEquals(WRONG_MONTH_FORMAT, response);
+	}
+
+	@Test
+	void getCarOwners_success() throws Exception {
+		Map<String, CarOwnerResultDto> expected = new LinkedHashMap<>();
+		expected.put(CAR_NUMBER, CarOwnerResultDto.of(personDto));
+		expected.put(CAR_NUMBER_1, CarOwnerResultDto.notFound(CAR_NOT_FOUND_MESSAGE));
+		when(carsService.getCarOwners(List.of(CAR_NUMBER, CAR_NUMBER_1))).thenReturn(expected);
+		String actualJSON = mockMvc
+				.perform(post("http://localhost:8080/cars/owner/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(List.of(CAR_NUMBER, CAR_NUMBER_1))))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(expected), actualJSON);
+	}
+
 	@Test
 	void testGetCarOwner() throws Exception {
 		when(carsService.getCarOwner(CAR_NUMBER)).thenReturn(personDto);
@@ -159,11 +302,52 @@ class CarsControllerTest {
 		String jsonExpected = mapper.writeValueAsString(list);
 		when(carsService.mostSoldModelNames()).thenReturn(list);
 		String responseJSON = mockMvc.perform(get("http://localhost:8080/cars/models")).andExpect(status().isOk())
-				.andReturn().getResponse().getContentAsString();
+				.andExpect(header().string("Cache-Control", "max-age=60, public")).andReturn().getResponse()
+				.getContentAsString();
 		assertEquals(jsonExpected, responseJSON);
 
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	void getQueryResultStream_Ndjson() throws Exception {
+		QueryDto queryDto = new QueryDto(QueryType.JPQL, "select car.number, car.kilometers from Car car");
+		when(carsService.anyQueryStream(eq(queryDto), any())).thenAnswer(invocation -> {
+			Consumer<List<Object>> rowsConsumer = invocation.getArgument(1);
+			rowsConsumer.accept(List.of(CAR_NUMBER, 1000));
+			rowsConsumer.accept(Arrays.asList(CAR_NUMBER, null));
+			return new QueryStreamResultDto(2, false);
+		});
+		MvcResult mvcResult = mockMvc
+				.perform(post("http://localhost:8080/cars/query?stream=true").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(queryDto)))
+				.andExpect(request().asyncStarted()).andReturn();
+		String response = mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isOk()).andReturn()
+				.getResponse().getContentAsString();
+		assertEquals("[\"%s\",1000]\n[\"%s\",null]\n".formatted(CAR_NUMBER, CAR_NUMBER), response);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void getQueryResultStream_TruncatedMarker() throws Exception {
+		QueryDto queryDto = new QueryDto(QueryType.SQL, "select car_number from cars");
+		when(carsService.anyQueryStream(eq(queryDto), any())).thenAnswer(invocation -> {
+			Consumer<List<Object>> rowsConsumer = invocation.getArgument(1);
+			// the cap of 2 rows is reached, the result has more rows
+			rowsConsumer.accept(List.of(CAR_NUMBER));
+			rowsConsumer.accept(List.of(CAR_NUMBER));
+			return new QueryStreamResultDto(2, true);
+		});
+		MvcResult mvcResult = mockMvc
+				.perform(post("http://localhost:8080/cars/query?stream=true").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(queryDto)))
+				.andExpect(request().asyncStarted()).andReturn();
+		String response = mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isOk()).andReturn()
+				.getResponse().getContentAsString();
+		assertEquals("[\"%s\"]\n[\"%s\"]\n{\"rows\":2,\"truncated\":true}\n".formatted(CAR_NUMBER, CAR_NUMBER),
+				response);
+	}
+
 	/******************************************************************/
 	/*********** ALternative flows - Service Exceptions Handling *************/
 	@Test
@@ -252,7 +436,8 @@ class CarsControllerTest {
 	@Test
 	void testGetOwnerCarsPersonNotFound() throws Exception {
 
-		when(carsService.getOwnerCars(PERSON_ID)).thenThrow(new NotFoundException(PERSON_NOT_FOUND_MESSAGE));
+		when(carsService.getOwnerCarsPage(PERSON_ID, null, Integer.parseInt(DEFAULT_PAGE_SIZE)))
+				.thenThrow(new NotFoundException(PERSON_NOT_FOUND_MESSAGE));
 		String response = mockMvc.perform(get("http://localhost:8080/cars/person/" + PERSON_ID))
 				.andExpect(status().isNotFound()).andReturn().getResponse().getContentAsString();
 		assertEquals(PERSON_NOT_FOUND_MESSAGE, response);
@@ -306,6 +491,31 @@ class CarsControllerTest {
 		assertEquals(WRONG_MIN_PERSON_ID_VALUE, response);
 	}
 
+	@Test
+	void getCarOwnersWrongCarNumber() throws Exception {
+		String response = mockMvc
+				.perform(post("http://localhost:8080/cars/owner/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(List.of(CAR_NUMBER, WRONG_CAR_NUMBER))))
+				.andExpect(status().isBadRequest()).andReturn().getResponse().getContentAsString();
+		assertEquals(WRONG_CAR_NUMBER_MESSAGE, response);
+	}
+
+	@Test
+	void purchaseAllWrongPersonId() throws Exception {
+		String response = mockMvc
+				.perform(put("http://localhost:8080/cars/trade/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(List.of(tradeDeal, tradeDealWrongId))))
+				.andExpect(status().isBadRequest()).andReturn().getResponse().getContentAsString();
+		assertEquals(WRONG_MIN_PERSON_ID_VALUE, response);
+	}
+
+	@Test
+	void deleteModelCarsWrongYear() throws Exception {
+		String response = mockMvc.perform(delete("http://localhost:8080/cars/models/model1/1999/cars"))
+				.andExpect(status().isBadRequest()).andReturn().getResponse().getContentAsString();
+		assertEquals(WRONG_MIN_YEAR, response);
+	}
+
 	@Test
 	void deleteCarWrongCarNumber() throws Exception {
 		String response = mockMvc.perform(delete("http://localhost:8080/cars/" + WRONG_CAR_NUMBER))
@@ -323,6 +533,23 @@ class CarsControllerTest {
 		allFieldsMissingTest(expectedCarMissingFieldsMessages, response);
 	}
 
+	@Test
+	void addCarsWrongItem() throws Exception {
+		String response = mockMvc
+				.perform(post("http://localhost:8080/cars/batch").contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(List.of(carDto, carDto1))))
+				.andExpect(status().isBadRequest()).andReturn().getResponse().getContentAsString();
+		assertEquals(WRONG_CAR_NUMBER_MESSAGE, response);
+	}
+
+	@Test
+	void addCarsEmptyBatch() throws Exception {
+		String response = mockMvc
+				.perform(post("http://localhost:8080/cars/batch").contentType(MediaType.APPLICATION_JSON).content("[]"))
+				.andExpect(status().isBadRequest()).andReturn().getResponse().getContentAsString();
+		assertEquals(MISSING_BATCH_ITEMS_MESSAGE, response);
+	}
+
 	@Test
 	void addPersonMissingFields() throws Exception {
 		String jsonPersonDto = mapper.writeValueAsString(personAllFieldsMissing); // conversion from carDto object to
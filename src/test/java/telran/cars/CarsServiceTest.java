@@ -2,23 +2,38 @@ package telran.cars;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import org.springframework.test.context.jdbc.Sql;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import telran.cars.api.ServiceExceptionMessages;
 import telran.cars.repo.*;
 import telran.cars.dto.*;
 import telran.cars.exceptions.*;
 
 import telran.cars.service.CarsService;
+import telran.cars.service.CarsServiceMetrics;
+import telran.cars.service.events.*;
 import telran.cars.service.model.*;
 
 record ModelNameAmountTest(String name, long amount) implements Comparable<ModelNameAmountTest> {
@@ -48,6 +63,7 @@ class CarsServiceTest {
 	private static final String CAR_NUMBER_3 = "333-11-111";
 	private static final String CAR_NUMBER_4 = "444-44-444";
 	private static final String CAR_NUMBER_5 = "555-55-555";
+	private static final String CAR_NUMBER_EVENTS = "888-88-888";
 
 	private static final String NAME1 = "name1";
 	private static final String NAME2 = "name2";
@@ -67,6 +83,8 @@ class CarsServiceTest {
 	private static final Long PERSON_ID_4 = 126l;
 	private static final Long PERSON_ID_5 = 127l;
 	private static final Long PERSON_ID_NOT_EXISTS = 1111111111L;
+	private static final Long PERSON_ID_IMPORT_1 = 200001l;
+	private static final Long PERSON_ID_IMPORT_2 = 200002l;
 
 	private static final String NEW_EMAIL = "name1@tel-ran.co.il";
 	private static final String EMAIL1 = "name1@gmail.com";
@@ -81,6 +99,18 @@ class CarsServiceTest {
 	private static final String DATE_TRADE_DEAL_4 = "2023-11-20";
 	private static final String DATE_TRADE_DEAL_5 = "2023-11-20";
 
+	private static final String IMPORT_NAME = "trade_deals.csv";
+	private static final String TRADE_DEALS_CSV_HEAD = """
+			carNumber,personId,date
+			111-11-111,200001,2023-05-01
+			222-11-111,,2023-05-02
+			kuku,200001,2023-05-03
+			444-44-444,200001,2023-05-04
+			""";
+	private static final String TRADE_DEALS_CSV = TRADE_DEALS_CSV_HEAD + """
+			111-11-111,200002,2023-06-01
+			""";
+
 	CarDto car1 = new CarDto(CAR_NUMBER_1, MODEL1, 2020, "red", 1000, CarState.GOOD);
 	CarDto car2 = new CarDto(CAR_NUMBER_2, MODEL1, 2020, "silver", 10000, CarState.OLD);
 	CarDto car3 = new CarDto(CAR_NUMBER_3, MODEL4, 2023, "white", 0, CarState.NEW);
@@ -108,6 +138,32 @@ class CarsServiceTest {
 	@Autowired
 	CarsService carsService;
 
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	RecordingEventsConsumer recordingEventsConsumer;
+
+	static class RecordingEventsConsumer implements CarsEventsConsumer {
+		final List<CarsEvent> events = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void accept(List<CarsEvent> batch) {
+			events.addAll(batch);
+		}
+	}
+
+	@TestConfiguration
+	static class EventsConfiguration {
+		@Bean
+		RecordingEventsConsumer recordingEventsConsumer() {
+			return new RecordingEventsConsumer();
+		}
+	}
+
 	@Test
 	void addPerson_newValidPerson_Success() {
 		assertEquals(personDto, carsService.addPerson(personDto));
@@ -128,12 +184,59 @@ class CarsServiceTest {
 		assertThrowsExactly(ModelNotFoundException.class, () -> carsService.addCar(carNoModel));
 	}
 
+	@Test
+	void addCar_ModelsCacheHit() {
+		carsService.addCar(car4);
+		CacheStatsDto stats = carsService.getModelsCacheStats();
+		CarDto carSameModel = new CarDto("777-77-777", MODEL4, 2023, "blue", 0, CarState.NEW);
+		assertEquals(carSameModel, carsService.addCar(carSameModel));
+		assertEquals(stats.hits() + 1, carsService.getModelsCacheStats().hits());
+		assertEquals(stats.misses(), carsService.getModelsCacheStats().misses());
+		assertEquals(carSameModel, carRepo.findById(carSameModel.number()).get().build());
+	}
+
 	@Test
 	void addCar_sameCar_IllegalCarsState() {
 		assertEquals(car4, carsService.addCar(car4));
 		assertThrowsExactly(IllegalCarsStateException.class, () -> carsService.addCar(car1));
 	}
 
+	@Test
+	void addCars_batch_ItemResults() {
+		CarDto carNoModel = new CarDto("666-66-666", MODEL2, 2018, "green", 100000, CarState.OLD);
+		List<BatchItemResultDto> res = carsService.addCars(List.of(car4, car1, car5, car4, carNoModel));
+		BatchItemResultDto[] expected = { BatchItemResultDto.ok(CAR_NUMBER_4),
+				BatchItemResultDto.error(CAR_NUMBER_1, ServiceExceptionMessages.CAR_ALREADY_EXISTS),
+				BatchItemResultDto.ok(CAR_NUMBER_5),
+				BatchItemResultDto.error(CAR_NUMBER_4, ServiceExceptionMessages.DUPLICATED_BATCH_ITEM),
+				BatchItemResultDto.error(carNoModel.number(), ServiceExceptionMessages.MODEL_NOT_FOUND) };
+		assertArrayEquals(expected, res.toArray());
+		assertEquals(car4, carRepo.findById(CAR_NUMBER_4).get().build());
+		assertEquals(car5, carRepo.findById(CAR_NUMBER_5).get().build());
+		assertFalse(carRepo.existsById(carNoModel.number()));
+	}
+
+	@Test
+	void addPersons_batch_ItemResults() {
+		List<BatchItemResultDto> res = carsService.addPersons(List.of(personDto4, personDto1, personDto5, personDto4));
+		BatchItemResultDto[] expected = { BatchItemResultDto.ok(PERSON_ID_4.toString()),
+				BatchItemResultDto.error(PERSON_ID_1.toString(), ServiceExceptionMessages.PERSON_ALREADY_EXISTS),
+				BatchItemResultDto.ok(PERSON_ID_5.toString()),
+				BatchItemResultDto.error(PERSON_ID_4.toString(), ServiceExceptionMessages.DUPLICATED_BATCH_ITEM) };
+		assertArrayEquals(expected, res.toArray());
+		assertEquals(personDto5, carOwnerRepo.findById(PERSON_ID_5).get().build());
+	}
+
+	@Test
+	void addModels_batch_ItemResults() {
+		ModelDto modelNew = new ModelDto(MODEL4, 2024, "Company1", 100, 2000);
+		ModelDto modelExisting = new ModelDto(MODEL1, 2020, "company1", 84, 1300);
+		List<BatchItemResultDto> res = carsService.addModels(List.of(modelNew, modelExisting));
+		assertTrue(res.get(0).success());
+		assertEquals(ServiceExceptionMessages.MODEL_ALREADY_EXISTS, res.get(1).message());
+		assertThrowsExactly(IllegalModelsStateException.class, () -> carsService.addModel(modelNew));
+	}
+
 	@Test
 	void testAddModel() {
 		ModelDto modelDtoNew = new ModelDto(MODEL4, 2024, "Company1", 100, 2000);
@@ -161,13 +264,43 @@ class CarsServiceTest {
 		assertThrowsExactly(CarNotFoundException.class, () -> carsService.deleteCar(CAR_NUMBER_1));
 	}
 
+	@Test
+	void eTags_ChangedByWritePaths() {
+		String ownerCarsETag1 = carsService.getOwnerCarsETag(PERSON_ID_1);
+		String ownerCarsETag2 = carsService.getOwnerCarsETag(PERSON_ID_2);
+		String carOwnerETag = carsService.getCarOwnerETag(CAR_NUMBER_1);
+		assertNull(carsService.getOwnerCarsETag(PERSON_ID_NOT_EXISTS));
+		assertNull(carsService.getCarOwnerETag(CAR_NUMBER_4));
+		carsService.getOwnerCars(PERSON_ID_1);
+		assertEquals(ownerCarsETag1, carsService.getOwnerCarsETag(PERSON_ID_1));
+
+		carsService.updatePerson(new PersonDto(PERSON_ID_1, NAME1, BIRTH_DATE_1, NEW_EMAIL));
+		assertNotEquals(ownerCarsETag1, ownerCarsETag1 = carsService.getOwnerCarsETag(PERSON_ID_1));
+		assertNotEquals(carOwnerETag, carOwnerETag = carsService.getCarOwnerETag(CAR_NUMBER_1));
+
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_1));
+		assertNotEquals(ownerCarsETag1, ownerCarsETag1 = carsService.getOwnerCarsETag(PERSON_ID_1));
+		assertNotEquals(ownerCarsETag2, ownerCarsETag2 = carsService.getOwnerCarsETag(PERSON_ID_2));
+		assertNotEquals(carOwnerETag, carOwnerETag = carsService.getCarOwnerETag(CAR_NUMBER_1));
+
+		carsService.deletePerson(PERSON_ID_2);
+		assertNull(carsService.getOwnerCarsETag(PERSON_ID_2));
+		assertNotEquals(carOwnerETag, carOwnerETag = carsService.getCarOwnerETag(CAR_NUMBER_1));
+
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_1, DATE_TRADE_DEAL_1));
+		assertNotEquals(ownerCarsETag1, ownerCarsETag1 = carsService.getOwnerCarsETag(PERSON_ID_1));
+		carsService.deleteCar(CAR_NUMBER_1);
+		assertNotEquals(ownerCarsETag1, carsService.getOwnerCarsETag(PERSON_ID_1));
+		assertNull(carsService.getCarOwnerETag(CAR_NUMBER_1));
+	}
+
 	@Test
 	void purchase_NewCarOwner_WithOldOwner() {
 		int countDeals = (int) tradeDealRepo.count();
 		TradeDealDto tradeDealDto = new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_1);
 		assertEquals(tradeDealDto, carsService.purchase(tradeDealDto));
 		assertEquals(PERSON_ID_2, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
-		TradeDeal tradeDeal = tradeDealRepo.findAll().get(countDeals);
+		TradeDeal tradeDeal = tradeDealRepo.findAll(Sort.by("id")).get(countDeals);
 		assertEquals(CAR_NUMBER_1, tradeDeal.getCar().getNumber());
 		assertEquals(PERSON_ID_2, tradeDeal.getCarOwner().getId());
 		assertEquals(DATE_TRADE_DEAL_1, tradeDeal.getDate().toString());
@@ -180,7 +313,7 @@ class CarsServiceTest {
 		TradeDealDto tradeDealDto = new TradeDealDto(CAR_NUMBER_4, PERSON_ID_2, DATE_TRADE_DEAL_1);
 		assertEquals(tradeDealDto, carsService.purchase(tradeDealDto));
 		assertEquals(PERSON_ID_2, carRepo.findById(CAR_NUMBER_4).get().getCarOwner().getId());
-		TradeDeal tradeDeal = tradeDealRepo.findAll().get(countDeals);
+		TradeDeal tradeDeal = tradeDealRepo.findAll(Sort.by("id")).get(countDeals);
 		assertEquals(CAR_NUMBER_4, tradeDeal.getCar().getNumber());
 		assertEquals(PERSON_ID_2, tradeDeal.getCarOwner().getId());
 		assertEquals(DATE_TRADE_DEAL_1, tradeDeal.getDate().toString());
@@ -200,7 +333,7 @@ class CarsServiceTest {
 		TradeDealDto tradeDealDto = new TradeDealDto(CAR_NUMBER_1, null, DATE_TRADE_DEAL_1);
 		assertEquals(tradeDealDto, carsService.purchase(tradeDealDto));
 		assertNull(carRepo.findById(CAR_NUMBER_1).get().getCarOwner());
-		TradeDeal tradeDeal = tradeDealRepo.findAll().get(countDeals);
+		TradeDeal tradeDeal = tradeDealRepo.findAll(Sort.by("id")).get(countDeals);
 		assertEquals(CAR_NUMBER_1, tradeDeal.getCar().getNumber());
 		assertNull(tradeDeal.getCarOwner());
 		assertEquals(DATE_TRADE_DEAL_1, tradeDeal.getDate().toString());
@@ -215,6 +348,177 @@ class CarsServiceTest {
 		assertThrowsExactly(TradeDealIllegalStateException.class, () -> carsService.purchase(tradeDealNoOwners));
 	}
 
+	@Test
+	void purchaseAll_AppliedInOrder() {
+		int countDeals = (int) tradeDealRepo.count();
+		List<TradeDealDto> tradeDeals = List.of(new TradeDealDto(CAR_NUMBER_3, PERSON_ID_1, DATE_TRADE_DEAL_1),
+				new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_1),
+				new TradeDealDto(CAR_NUMBER_2, null, DATE_TRADE_DEAL_2),
+				new TradeDealDto(CAR_NUMBER_1, PERSON_ID_3, DATE_TRADE_DEAL_2));
+		assertEquals(tradeDeals, carsService.purchaseAll(tradeDeals));
+		assertEquals(PERSON_ID_3, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+		assertNull(carRepo.findById(CAR_NUMBER_2).get().getCarOwner());
+		assertEquals(PERSON_ID_1, carRepo.findById(CAR_NUMBER_3).get().getCarOwner().getId());
+		List<TradeDeal> saved = tradeDealRepo.findAll(Sort.by("id"));
+		assertEquals(countDeals + 4, saved.size());
+		assertEquals(tradeDeals,
+				saved.subList(countDeals, saved.size()).stream()
+						.map(tradeDeal -> new TradeDealDto(tradeDeal.getCar().getNumber(),
+								tradeDeal.getCarOwner() == null ? null : tradeDeal.getCarOwner().getId(),
+								tradeDeal.getDate().toString()))
+						.toList());
+	}
+
+	@Test
+	void purchaseAll_InvalidItemRollsBack() {
+		long countDeals = tradeDealRepo.count();
+		TradeDealDto tradeDeal = new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_1);
+		assertThrowsExactly(PersonNotFoundException.class, () -> carsService.purchaseAll(
+				List.of(tradeDeal, new TradeDealDto(CAR_NUMBER_2, PERSON_ID_NOT_EXISTS, DATE_TRADE_DEAL_1))));
+		assertThrowsExactly(CarNotFoundException.class, () -> carsService
+				.purchaseAll(List.of(tradeDeal, new TradeDealDto(CAR_NUMBER_4, PERSON_ID_1, DATE_TRADE_DEAL_1))));
+		assertThrowsExactly(TradeDealIllegalStateException.class, () -> carsService
+				.purchaseAll(List.of(tradeDeal, new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_2))));
+		assertEquals(PERSON_ID_1, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+		assertEquals(countDeals, tradeDealRepo.count());
+	}
+
+	@Test
+	void importTradeDeals_FinalOwners() {
+		setUpImportPersons();
+		int countDeals = (int) tradeDealRepo.count();
+		TradeDealsImportDto expected = new TradeDealsImportDto(IMPORT_NAME, 6, 3, 2, true);
+		assertEquals(expected, carsService.importTradeDeals(IMPORT_NAME, csvStream(TRADE_DEALS_CSV)));
+		assertEquals(countDeals + 3, tradeDealRepo.count());
+		assertEquals(PERSON_ID_IMPORT_2, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+		assertNull(carRepo.findById(CAR_NUMBER_2).get().getCarOwner());
+		assertEquals(expected, carsService.importTradeDeals(IMPORT_NAME, csvStream(TRADE_DEALS_CSV)));
+		assertEquals(countDeals + 3, tradeDealRepo.count());
+	}
+
+	@Test
+	void importTradeDeals_ResumeAfterFailure() {
+		setUpImportPersons();
+		int countDeals = (int) tradeDealRepo.count();
+		InputStream failingStream = new SequenceInputStream(csvStream(TRADE_DEALS_CSV_HEAD), new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("connection reset");
+			}
+		});
+		assertThrowsExactly(UncheckedIOException.class, () -> carsService.importTradeDeals(IMPORT_NAME, failingStream));
+		assertEquals(countDeals + 2, tradeDealRepo.count());
+		assertEquals(PERSON_ID_1, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+		TradeDealsImportDto expected = new TradeDealsImportDto(IMPORT_NAME, 6, 3, 2, true);
+		assertEquals(expected, carsService.importTradeDeals(IMPORT_NAME, csvStream(TRADE_DEALS_CSV)));
+		assertEquals(countDeals + 3, tradeDealRepo.count());
+		assertEquals(PERSON_ID_IMPORT_2, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+	}
+
+	@Test
+	void carsEvents_PublishedAfterCommit() throws InterruptedException {
+		CarDto car = new CarDto(CAR_NUMBER_EVENTS, MODEL4, 2023, "black", 0, CarState.NEW);
+		carsService.addCar(car);
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_EVENTS, PERSON_ID_1, DATE_TRADE_DEAL_4));
+		assertThrowsExactly(PersonNotFoundException.class, () -> carsService
+				.purchase(new TradeDealDto(CAR_NUMBER_EVENTS, PERSON_ID_NOT_EXISTS, DATE_TRADE_DEAL_4)));
+		carsService.deleteCar(CAR_NUMBER_EVENTS);
+		List<CarsEvent> events = List.of();
+		for (int i = 0; i < 100 && events.size() < 3; i++) {
+			Thread.sleep(50);
+			events = recordingEventsConsumer.events.stream()
+					.filter(event -> event.carNumber().equals(CAR_NUMBER_EVENTS)).toList();
+		}
+		assertEquals(List.of(CarsEventType.CAR_ADDED, CarsEventType.TRADE_DEAL, CarsEventType.CAR_DELETED),
+				events.stream().map(CarsEvent::type).toList());
+		assertEquals(PERSON_ID_1, events.get(1).personId());
+		assertEquals(DATE_TRADE_DEAL_4, events.get(1).date().toString());
+		assertEquals(MODEL4, events.get(2).modelName());
+	}
+
+	@Test
+	void purchase_ConcurrentSameCar_NoLostUpdates() throws Exception {
+		int nThreads = 8;
+		List<Long> personIds = new ArrayList<>();
+		for (int i = 0; i < nThreads; i++) {
+			long personId = PERSON_ID_IMPORT_1 + 100 + i;
+			carsService.addPerson(new PersonDto(personId, NAME4, BIRTH_DATE_4, EMAIL4));
+			personIds.add(personId);
+		}
+		int countDeals = tradeDealRepo.findByCarNumber(CAR_NUMBER_1).size();
+		List<Object> outcomes = runConcurrently(nThreads, i -> carsService
+				.purchase(new TradeDealDto(CAR_NUMBER_1, personIds.get(i), DATE_TRADE_DEAL_1)));
+		long successes = outcomes.stream().filter(TradeDealDto.class::isInstance).count();
+		assertTrue(successes > 0);
+		assertTrue(outcomes.stream().allMatch(o -> o instanceof TradeDealDto || o instanceof TradeDealConflictException),
+				outcomes::toString);
+		List<TradeDeal> deals = tradeDealRepo.findByCarNumber(CAR_NUMBER_1);
+		assertEquals(countDeals + successes, deals.size());
+		TradeDeal lastDeal = deals.stream().max((d1, d2) -> Long.compare(d1.getId(), d2.getId())).get();
+		assertEquals(lastDeal.getCarOwner().getId(), carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+	}
+
+	@Test
+	void purchase_ConcurrentDifferentCars_NoConflicts() throws Exception {
+		String[] carNumbers = { CAR_NUMBER_1, CAR_NUMBER_2, CAR_NUMBER_3 };
+		Long[] personIds = { PERSON_ID_1, PERSON_ID_2, PERSON_ID_3 };
+		int nPurchases = 10;
+		int countDeals = (int) tradeDealRepo.count();
+		List<Object> outcomes = runConcurrently(carNumbers.length, i -> {
+			for (int j = 1; j <= nPurchases; j++) {
+				carsService.purchase(new TradeDealDto(carNumbers[i], personIds[(i + j) % personIds.length],
+						DATE_TRADE_DEAL_1));
+			}
+			return nPurchases;
+		});
+		assertEquals(List.of(nPurchases, nPurchases, nPurchases), outcomes);
+		assertEquals(countDeals + nPurchases * carNumbers.length, tradeDealRepo.count());
+		for (int i = 0; i < carNumbers.length; i++) {
+			assertEquals(personIds[(i + nPurchases) % personIds.length],
+					carRepo.findById(carNumbers[i]).get().getCarOwner().getId());
+		}
+	}
+
+	/**
+	 * runs the given task by the given number of threads started at the same
+	 * time, returns the results or the thrown exceptions in the order of threads
+	 */
+	private List<Object> runConcurrently(int nThreads, IntFunction<Object> task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Object>> futures = new ArrayList<>();
+			for (int i = 0; i < nThreads; i++) {
+				int index = i;
+				futures.add(executor.submit(() -> {
+					start.await();
+					try {
+						return task.apply(index);
+					} catch (RuntimeException e) {
+						return e;
+					}
+				}));
+			}
+			start.countDown();
+			List<Object> res = new ArrayList<>();
+			for (Future<Object> future : futures) {
+				res.add(future.get(30, TimeUnit.SECONDS));
+			}
+			return res;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void setUpImportPersons() {
+		carsService.addPerson(new PersonDto(PERSON_ID_IMPORT_1, NAME4, BIRTH_DATE_4, EMAIL4));
+		carsService.addPerson(new PersonDto(PERSON_ID_IMPORT_2, NAME5, BIRTH_DATE_5, EMAIL5));
+	}
+
+	private InputStream csvStream(String csv) {
+		return new ByteArrayInputStream(csv.getBytes());
+	}
+
 	@Test
 	/**
 	 * test of the method getOwnerCars the method has been written at CW #64
@@ -238,6 +542,68 @@ class CarsServiceTest {
 		assertTrue(res.isEmpty());
 	}
 
+	@Test
+	void getOwnerCarsPage_Keyset() {
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_2, PERSON_ID_1, DATE_TRADE_DEAL_1));
+		PageDto<CarDto> page = carsService.getOwnerCarsPage(PERSON_ID_1, null, 1);
+		assertEquals(List.of(car1), page.items());
+		assertNotNull(page.next());
+		page = carsService.getOwnerCarsPage(PERSON_ID_1, page.next(), 1);
+		assertEquals(List.of(car2), page.items());
+		assertNull(page.next());
+		assertEquals(List.of(car1, car2), carsService.getOwnerCarsPage(PERSON_ID_1, null, 2).items());
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> carsService.getOwnerCarsPage(PERSON_ID_1, "not a token", 1));
+	}
+
+	@Test
+	void getCarTradeDeals_Keyset() {
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_4));
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, null, DATE_TRADE_DEAL_2));
+		PageDto<TradeDealHistoryDto> page = carsService.getCarTradeDeals(CAR_NUMBER_1, null, 2);
+		assertArrayEquals(new String[] { DATE_TRADE_DEAL_1, DATE_TRADE_DEAL_2 },
+				page.items().stream().map(TradeDealHistoryDto::date).toArray(String[]::new));
+		assertNull(page.items().get(1).personId());
+		page = carsService.getCarTradeDeals(CAR_NUMBER_1, page.next(), 2);
+		assertEquals(1, page.items().size());
+		assertEquals(PERSON_ID_2, page.items().get(0).personId());
+		assertNull(page.next());
+		assertEquals(2, carsService.getOwnerTradeDeals(PERSON_ID_2, null, 10).items().size());
+	}
+
+	@Test
+	void getCarTradeDeals_SameDateKeyset() {
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_1));
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_3, DATE_TRADE_DEAL_1));
+		List<Long> personIds = new ArrayList<>();
+		PageDto<TradeDealHistoryDto> page = carsService.getCarTradeDeals(CAR_NUMBER_1, null, 1);
+		page.items().forEach(deal -> personIds.add(deal.personId()));
+		while (page.next() != null) {
+			page = carsService.getCarTradeDeals(CAR_NUMBER_1, page.next(), 1);
+			page.items().forEach(deal -> personIds.add(deal.personId()));
+		}
+		assertEquals(List.of(PERSON_ID_1, PERSON_ID_2, PERSON_ID_3), personIds);
+	}
+
+	@Test
+	void getCarOwnerHistory_DateOrder() {
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, DATE_TRADE_DEAL_4));
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, null, DATE_TRADE_DEAL_2));
+		List<TradeDealHistoryDto> history = carsService.getCarHistory(CAR_NUMBER_1);
+		assertArrayEquals(new String[] { DATE_TRADE_DEAL_1, DATE_TRADE_DEAL_2, DATE_TRADE_DEAL_4 },
+				history.stream().map(TradeDealHistoryDto::date).toArray(String[]::new));
+		assertArrayEquals(new Long[] { PERSON_ID_1, null, PERSON_ID_2 },
+				history.stream().map(TradeDealHistoryDto::personId).toArray(Long[]::new));
+		assertArrayEquals(new String[] { CAR_NUMBER_2, CAR_NUMBER_1 }, carsService.getOwnerHistory(PERSON_ID_2)
+				.stream().map(TradeDealHistoryDto::carNumber).toArray(String[]::new));
+		carsService.addCar(car4);
+		carsService.addPerson(personDto4);
+		assertTrue(carsService.getCarHistory(CAR_NUMBER_4).isEmpty());
+		assertTrue(carsService.getOwnerHistory(PERSON_ID_4).isEmpty());
+		assertThrowsExactly(CarNotFoundException.class, () -> carsService.getCarHistory(CAR_NUMBER_5));
+		assertThrowsExactly(PersonNotFoundException.class, () -> carsService.getOwnerHistory(PERSON_ID_5));
+	}
+
 	@Test
 	/**
 	 * test of the method getCarOwner the method has been written at CW #64
@@ -249,6 +615,18 @@ class CarsServiceTest {
 		assertThrowsExactly(CarNotFoundException.class, () -> carsService.getCarOwner(CAR_NUMBER_5));
 	}
 
+	@Test
+	void getCarOwners_ChunkedBatch() {
+		carsService.addCar(car4);
+		Map<String, CarOwnerResultDto> owners = carsService
+				.getCarOwners(List.of(CAR_NUMBER_5, CAR_NUMBER_1, CAR_NUMBER_4, CAR_NUMBER_1, CAR_NUMBER_2));
+		assertEquals(List.of(CAR_NUMBER_5, CAR_NUMBER_1, CAR_NUMBER_4, CAR_NUMBER_2), List.copyOf(owners.keySet()));
+		assertEquals(CarOwnerResultDto.notFound(ServiceExceptionMessages.CAR_NOT_FOUND), owners.get(CAR_NUMBER_5));
+		assertEquals(CarOwnerResultDto.of(personDto1), owners.get(CAR_NUMBER_1));
+		assertEquals(CarOwnerResultDto.of(null), owners.get(CAR_NUMBER_4));
+		assertEquals(PERSON_ID_2, owners.get(CAR_NUMBER_2).owner().id());
+	}
+
 	@Test
 	/**
 	 * test of the method mostSoldModelNames the method has been written at CW #64
@@ -285,6 +663,126 @@ class CarsServiceTest {
 
 	}
 
+	@Test
+	void anyQueryStream_TypedRowsMaxRows() {
+		List<List<Object>> rows = new ArrayList<>();
+		QueryDto queryDto = new QueryDto(QueryType.JPQL,
+				"select car.number, car.kilometers, car.state from Car car order by car.number");
+		assertEquals(new QueryStreamResultDto(2, true), carsService.anyQueryStream(queryDto, rows::add));
+		assertEquals(List.of(CAR_NUMBER_1, 1000, CarState.GOOD), rows.get(0));
+		assertEquals(List.of(CAR_NUMBER_2, 10000, CarState.OLD), rows.get(1));
+		rows.clear();
+		assertEquals(new QueryStreamResultDto(2, false), carsService.anyQueryStream(
+				new QueryDto(QueryType.JPQL, "select car.number from Car car where car.kilometers > 500"), rows::add));
+		rows.clear();
+		carsService.anyQueryStream(new QueryDto(QueryType.JPQL, "select car from Car car order by car.number"),
+				rows::add);
+		assertEquals(List.of(car1), rows.get(0));
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> carsService.anyQueryStream(new QueryDto(QueryType.SQL, "select kuku from cars"), rows::add));
+	}
+
+	@Test
+	void anyQuery_ParametersTemplatesCache() {
+		Map<String, Object> parameters = Map.of("kilometers", 500, "date", "2023-03-20");
+		String query = """
+				select car.number from Car car where car.kilometers > :kilometers
+				and exists (select 1 from TradeDeal td where td.car = car and td.date > :date)
+				""";
+		QueryDto queryDto = new QueryDto(QueryType.JPQL, query, parameters);
+		assertEquals(List.of(CAR_NUMBER_2), carsService.anyQuery(queryDto));
+		CacheStatsDto stats = carsService.getQueryTemplatesStats();
+		assertEquals(List.of(CAR_NUMBER_1, CAR_NUMBER_2), carsService
+				.anyQuery(new QueryDto(QueryType.JPQL, query, Map.of("kilometers", 0, "date", "2000-01-01")))
+				.stream().sorted().toList());
+		assertEquals(stats.hits() + 1, carsService.getQueryTemplatesStats().hits());
+		QueryDto queryDtoSpaces = new QueryDto(QueryType.JPQL, "  " + query.replace(" ", "   "),
+				Map.of("kilometers", 0, "date", "2000-01-01"));
+		assertEquals(List.of(CAR_NUMBER_1, CAR_NUMBER_2), carsService.anyQuery(queryDtoSpaces).stream().sorted().toList());
+		assertEquals(stats.misses() + 1, carsService.getQueryTemplatesStats().misses());
+		assertEquals(List.of(CAR_NUMBER_3), carsService.anyQuery(new QueryDto(QueryType.SQL,
+				"select car_number from cars where color = :color", Map.of("color", "white"))));
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> carsService.anyQuery(new QueryDto(QueryType.JPQL, query, Map.of("kilometers", 500))));
+		assertThrowsExactly(IllegalArgumentException.class, () -> carsService.anyQuery(new QueryDto(QueryType.SQL,
+				"select car_number from cars where color = 'a :b'", Map.of("b", "white"))));
+	}
+
+	@Test
+	void anyQuery_CommentsStripped() {
+		String query = """
+				select car_number from cars -- cars of the color
+				/* :kilometers isn't a parameter */ where color = :color
+				""";
+		assertEquals(List.of(CAR_NUMBER_3), carsService.anyQuery(new QueryDto(QueryType.SQL, query,
+				Map.of("color", "white"))));
+		assertEquals(List.of(CAR_NUMBER_3), carsService.anyQuery(new QueryDto(QueryType.SQL,
+				"select \"CAR_NUMBER\" from cars where color = :color", Map.of("color", "white"))));
+	}
+
+	@Test
+	void serviceMetrics_OutcomeExceptionTags() {
+		carsService.getCarOwner(CAR_NUMBER_1);
+		assertThrowsExactly(CarNotFoundException.class, () -> carsService.getCarOwner(CAR_NUMBER_4));
+		Timer success = meterRegistry.get(CarsServiceMetrics.TIMER_NAME).tags("method", "getCarOwner", "outcome",
+				"success", "exception", "none").timer();
+		Timer error = meterRegistry.get(CarsServiceMetrics.TIMER_NAME).tags("method", "getCarOwner", "outcome",
+				"error", "exception", CarNotFoundException.class.getSimpleName()).timer();
+		assertTrue(success.count() >= 1);
+		assertTrue(error.count() >= 1);
+		assertNotNull(meterRegistry.find("cars.cache.hits").tag("cache", "models").functionCounter());
+	}
+
+	@Test
+	void modelCounters_DeleteCarAndRebuild() {
+		setUpAddInfo();
+		carsService.deleteCar(CAR_NUMBER_3);
+		assertArrayEquals(new String[] { MODEL1 }, carsService.mostSoldModelNames().toArray(String[]::new));
+		ModelNameAmountTest[] expected = { new ModelNameAmountTest(MODEL1, 2), new ModelNameAmountTest(MODEL3, 1),
+				new ModelNameAmountTest(MODEL4, 1) };
+		modelNameAmountsTest(carsService.mostPopularModelNames(10), expected);
+		assertEquals(4, carsService.rebuildModelCounters());
+		assertArrayEquals(new String[] { MODEL1 }, carsService.mostSoldModelNames().toArray(String[]::new));
+		modelNameAmountsTest(carsService.mostPopularModelNames(10), expected);
+	}
+
+	@Test
+	void deleteModelCars_CountersAndArchive() {
+		setUpAddInfo();
+		assertEquals(new BulkDeleteDto(2, 2, 2), carsService.deleteModelCars(MODEL1, 2020, true));
+		assertFalse(carRepo.existsById(CAR_NUMBER_1));
+		assertFalse(carRepo.existsById(CAR_NUMBER_2));
+		assertEquals(2, countRows("cars_archive"));
+		assertEquals(2, countRows("trade_deals_archive"));
+		assertEquals(0, carsService.countTradeDealAtMonthModel(MODEL1, 3, 2023));
+		assertEquals(0, jdbcTemplate.queryForObject(
+				"select coalesce(sum(cars_count), 0) from birth_year_model_cars where model_name = ?", Long.class,
+				MODEL1));
+		ModelNameAmountTest[] expected = { new ModelNameAmountTest(MODEL4, 2), new ModelNameAmountTest(MODEL3, 1) };
+		modelNameAmountsTest(carsService.mostPopularModelNames(10), expected);
+		carsService.rebuildModelCounters();
+		modelNameAmountsTest(carsService.mostPopularModelNames(10), expected);
+		assertEquals(new BulkDeleteDto(0, 0, 0), carsService.deleteModelCars(MODEL1, 2020, false));
+		assertThrowsExactly(ModelNotFoundException.class, () -> carsService.deleteModelCars(MODEL2, 2023, false));
+	}
+
+	@Test
+	void deleteOwnersWithoutCars_CascadeAndArchive() {
+		carsService.addPerson(personDto4);
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, null, DATE_TRADE_DEAL_1));
+		assertEquals(new BulkDeleteDto(2, 1, 2), carsService.deleteOwnersWithoutCars(true));
+		assertFalse(carOwnerRepo.existsById(PERSON_ID_1));
+		assertFalse(carOwnerRepo.existsById(PERSON_ID_4));
+		assertTrue(carOwnerRepo.existsById(PERSON_ID_2));
+		assertEquals(0, tradeDealRepo.countByCarOwnerIds(List.of(PERSON_ID_1)));
+		assertEquals(2, countRows("car_owners_archive"));
+		assertEquals(new BulkDeleteDto(0, 0, 0), carsService.deleteOwnersWithoutCars(false));
+	}
+
+	private long countRows(String table) {
+		return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+	}
+
 	private void modelNameAmountsTest(List<ModelNameAmount> list, ModelNameAmountTest[] expected) {
 		ModelNameAmountTest[] actual = list.stream().map(ma -> new ModelNameAmountTest(ma.getName(), ma.getAmount()))
 				.sorted().toArray(ModelNameAmountTest[]::new);
@@ -299,6 +797,33 @@ class CarsServiceTest {
 		assertEquals(2, carsService.countTradeDealAtMonthModel(MODEL1, 3, 2023));
 	}
 
+	@Test
+	void tradeDealsHistogram_Rollup() {
+		List<String> modelNames = List.of(MODEL1, MODEL4, MODEL2);
+		histogramTest(carsService.tradeDealsHistogram(modelNames, "2023-02", "2023-04"), new long[][] { { 0, 2, 0 },
+				{ 0, 0, 1 }, { 0, 0, 0 } }, modelNames);
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, "2023-04-15"));
+		carsService.deleteCar(CAR_NUMBER_3);
+		histogramTest(carsService.tradeDealsHistogram(modelNames, "2023-02", "2023-04"), new long[][] { { 0, 2, 1 },
+				{ 0, 0, 0 }, { 0, 0, 0 } }, modelNames);
+		assertEquals(1, carsService.countTradeDealAtMonthModel(MODEL1, 4, 2023));
+		carsService.rebuildModelCounters();
+		histogramTest(carsService.tradeDealsHistogram(modelNames, "2023-02", "2023-04"), new long[][] { { 0, 2, 1 },
+				{ 0, 0, 0 }, { 0, 0, 0 } }, modelNames);
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> carsService.tradeDealsHistogram(modelNames, "2023-04", "2023-02"));
+		assertThrowsExactly(IllegalArgumentException.class,
+				() -> carsService.tradeDealsHistogram(modelNames, "2000-01", "2023-02"));
+	}
+
+	private void histogramTest(List<ModelDealsHistogramDto> histograms, long[][] expected, List<String> modelNames) {
+		assertEquals(modelNames, histograms.stream().map(ModelDealsHistogramDto::modelName).toList());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("2023-02", histograms.get(i).fromMonth());
+			assertArrayEquals(expected[i], histograms.get(i).counts().stream().mapToLong(Long::longValue).toArray());
+		}
+	}
+
 	@Test
 	@DisplayName(SERVICE_TEST + TestNames.MODEL_NAMES_MOST_POPULAR_OWNER_AGES)
 	void testMostPopularModelNameByOwnerAges() {
@@ -308,6 +833,28 @@ class CarsServiceTest {
 		modelNameAmountsTest(list, expected);
 	}
 
+	@Test
+	void ownerAgesIndex_WriteOperationsAndRebuild() {
+		setUpAddInfo();
+		carsService.deletePerson(PERSON_ID_3);
+		modelNameAmountsTest(carsService.mostPopularModelNameByOwnerAges(10, 30, 60),
+				new ModelNameAmountTest[] { new ModelNameAmountTest(MODEL1, 1), new ModelNameAmountTest(MODEL4, 1) });
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_4, DATE_TRADE_DEAL_4));
+		carsService.deleteCar(CAR_NUMBER_4);
+		ModelNameAmountTest[] expected = { new ModelNameAmountTest(MODEL1, 2) };
+		modelNameAmountsTest(carsService.mostPopularModelNameByOwnerAges(10, 30, 60), expected);
+		ModelNameAmountTest[] expectedAllAges = { new ModelNameAmountTest(MODEL1, 2),
+				new ModelNameAmountTest(MODEL3, 1) };
+		modelNameAmountsTest(carsService.mostPopularModelNameByOwnerAges(10, 0, 100), expectedAllAges);
+		assertEquals(84, carsService.minEnginePowerCapacityByOwnerAges(30, 60).getPower());
+		assertEquals(2000, carsService.minEnginePowerCapacityByOwnerAges(0, 29).getCapacity());
+		assertTrue(carsService.mostPopularModelNameByOwnerAges(10, 0, 10).isEmpty());
+		assertNull(carsService.minEnginePowerCapacityByOwnerAges(0, 10));
+		carsService.rebuildModelCounters();
+		modelNameAmountsTest(carsService.mostPopularModelNameByOwnerAges(10, 30, 60), expected);
+		modelNameAmountsTest(carsService.mostPopularModelNameByOwnerAges(10, 0, 100), expectedAllAges);
+	}
+
 	@Test
 	@DisplayName(SERVICE_TEST + TestNames.COLOR_MOST_POPULR_MODEL)
 	void testOneMostPopularColorModel() {
@@ -0,0 +1,107 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+
+import telran.cars.dto.*;
+import telran.cars.service.*;
+
+/**
+ * The analytics are served by the fleet snapshot, which is reloaded after the
+ * test data script before each test
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:snapshotdb", "app.fleet.snapshot.enabled=true" })
+@Sql(scripts = { "classpath:test_data.sql" })
+class FleetSnapshotTest {
+	private static final String MODEL1 = "model1";
+	private static final String MODEL3 = "model3";
+	private static final String MODEL4 = "model4";
+	private static final String CAR_NUMBER_1 = "111-11-111";
+	private static final String CAR_NUMBER_3 = "333-11-111";
+	private static final String CAR_NUMBER_4 = "444-44-444";
+	private static final String CAR_NUMBER_5 = "555-55-555";
+	private static final long PERSON_ID_2 = 124l;
+	private static final long PERSON_ID_3 = 125l;
+	private static final long PERSON_ID_4 = 126l;
+	private static final long PERSON_ID_5 = 127l;
+
+	@Autowired
+	CarsService carsService;
+	@Autowired
+	FleetSnapshot fleetSnapshot;
+	@Autowired
+	OwnerAgesIndex ownerAgesIndex;
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void reload() {
+		carsService.checkFleetSnapshot();
+		assertTrue(fleetSnapshot.isReady());
+	}
+
+	private void setUpAddInfo() {
+		carsService.addCar(new CarDto(CAR_NUMBER_4, MODEL4, 2023, "black", 0, CarState.NEW));
+		carsService.addCars(List.of(new CarDto(CAR_NUMBER_5, MODEL3, 2021, "silver", 5000, CarState.MIDDLE)));
+		carsService.addPerson(new PersonDto(PERSON_ID_4, "name4", "1975-10-10", "name4@gmail.com"));
+		carsService.addPerson(new PersonDto(PERSON_ID_5, "name5", "2004-10-10", "name5@gmail.com"));
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_4, PERSON_ID_4, "2023-11-20"));
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_5, PERSON_ID_5, "2023-11-20"));
+	}
+
+	@Test
+	void analytics_Snapshot() {
+		setUpAddInfo();
+		assertEquals("red", carsService.oneMostPopularColorModel(MODEL1));
+		assertNull(carsService.oneMostPopularColorModel("kuku"));
+		assertAmounts(List.of(ModelNameAmount.of(MODEL1, 2), ModelNameAmount.of(MODEL4, 2)),
+				carsService.mostPopularModelNames(2));
+		assertAmounts(List.of(ModelNameAmount.of(MODEL4, 2), ModelNameAmount.of(MODEL1, 1)),
+				carsService.mostPopularModelNameByOwnerAges(2, 30, 60));
+		EnginePowerCapacity powerCapacity = carsService.minEnginePowerCapacityByOwnerAges(30, 60);
+		assertEquals(84, powerCapacity.getPower());
+		assertEquals(1300, powerCapacity.getCapacity());
+		assertNull(carsService.minEnginePowerCapacityByOwnerAges(0, 10));
+		for (int ageFrom = 0; ageFrom <= 60; ageFrom += 15) {
+			LocalDate birthDateFrom = LocalDate.now().minusYears(ageFrom + 30);
+			LocalDate birthDateTo = LocalDate.now().minusYears(ageFrom);
+			assertAmounts(ownerAgesIndex.mostPopularModelNames(10, birthDateFrom, birthDateTo),
+					fleetSnapshot.mostPopularModelNames(10, birthDateFrom, birthDateTo));
+		}
+	}
+
+	@Test
+	void writePaths_ConsistentWithDatabase() {
+		setUpAddInfo();
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, "2023-12-01"));
+		carsService.deletePerson(PERSON_ID_3);
+		carsService.deleteCar(CAR_NUMBER_4);
+		assertEquals(new FleetSnapshotCheckDto(4, 0, false), carsService.checkFleetSnapshot());
+		assertNull(carsService.minEnginePowerCapacityByOwnerAges(45, 55));
+	}
+
+	@Test
+	void check_MismatchReloads() {
+		jdbcTemplate.update("update cars set color = 'white' where car_number = ?", CAR_NUMBER_1);
+		assertEquals("red", carsService.oneMostPopularColorModel(MODEL1));
+		assertEquals(new FleetSnapshotCheckDto(3, 1, true), carsService.checkFleetSnapshot());
+		assertEquals("silver", carsService.oneMostPopularColorModel(MODEL1));
+		jdbcTemplate.update("delete from cars where car_number = ?", CAR_NUMBER_3);
+		assertEquals(new FleetSnapshotCheckDto(2, 1, true), carsService.checkFleetSnapshot());
+		assertEquals(new FleetSnapshotCheckDto(2, 0, false), carsService.checkFleetSnapshot());
+	}
+
+	private void assertAmounts(List<ModelNameAmount> expected, List<ModelNameAmount> actual) {
+		assertEquals(expected.stream().map(amount -> amount.getName() + amount.getAmount()).toList(),
+				actual.stream().map(amount -> amount.getName() + amount.getAmount()).toList());
+	}
+}
@@ -0,0 +1,160 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import telran.cars.repo.*;
+import telran.cars.service.model.ModelYear;
+
+/**
+ * Runs EXPLAIN of every SQL statement generated by the repository queries of
+ * the service paths and fails if H2 plans a table scan for any of them.
+ * Maintenance queries reading whole tables (models cache warm-up, rebuild of
+ * the model counters) aren't checked
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:plansdb",
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector=telran.cars.QueryPlansTest$StatementsRecorder" })
+@Sql(scripts = { "classpath:test_data.sql" })
+class QueryPlansTest {
+	private static final String CAR_NUMBER = "111-11-111";
+	private static final long PERSON_ID = 123l;
+	private static final String MODEL = "model1";
+	private static final String TABLE_SCAN = "tableScan";
+	private static final LocalDate DATE_FROM = LocalDate.parse("1970-01-01");
+	private static final LocalDate DATE_TO = LocalDate.parse("2030-01-01");
+
+	static final List<String> statements = new CopyOnWriteArrayList<>();
+
+	public static class StatementsRecorder implements StatementInspector {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String inspect(String sql) {
+			statements.add(sql);
+			return sql;
+		}
+	}
+
+	@Autowired
+	CarRepo carRepo;
+	@Autowired
+	CarOwnerRepo carOwnerRepo;
+	@Autowired
+	ModelRepo modelRepo;
+	@Autowired
+	ModelCounterRepo modelCounterRepo;
+	@Autowired
+	BirthYearModelCarsRepo birthYearModelCarsRepo;
+	@Autowired
+	TradeDealRepo tradeDealRepo;
+	@Autowired
+	ModelMonthDealsRepo modelMonthDealsRepo;
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	@Test
+	void carRepoQueries_NoTableScans() {
+		assertNoTableScans(() -> {
+			carRepo.findById(CAR_NUMBER);
+			carRepo.findByCarOwnerId(PERSON_ID);
+			carRepo.findCarDtosByOwnerId(PERSON_ID);
+			carRepo.findCarDtosByOwnerIdAfter(PERSON_ID, "", 10);
+			carRepo.findOwnerDtoByCarNumber(CAR_NUMBER);
+			carRepo.findExistingNumbers(List.of(CAR_NUMBER));
+			carRepo.findCarOwnersByNumbers(List.of(CAR_NUMBER, "222-11-111", "333-11-111"));
+			carRepo.findModelNames(List.of(CAR_NUMBER));
+			carRepo.findOneMostPopularColorModel(MODEL);
+			carRepo.findMinPowerCapacitiesOwnerBirthDates(DATE_FROM, DATE_TO);
+			transactionTemplate.executeWithoutResult(status -> carRepo.updateOwnersByLatestDeals(1));
+			transactionTemplate.executeWithoutResult(
+					status -> carRepo.findByNumbersForUpdate(List.of(CAR_NUMBER, "222-11-111")));
+			transactionTemplate.executeWithoutResult(status -> carRepo.findNumbersByModelForUpdate(MODEL, 2020));
+			carRepo.countByNumbersGroupByOwnerBirthYear(List.of(CAR_NUMBER, "222-11-111"));
+		});
+	}
+
+	@Test
+	void ownerAndModelQueries_NoTableScans() {
+		assertNoTableScans(() -> {
+			carOwnerRepo.findById(PERSON_ID);
+			carOwnerRepo.findExistingIds(List.of(PERSON_ID));
+			modelRepo.findById(new ModelYear(MODEL, 2020));
+			modelRepo.findByModelYearNameIn(List.of(MODEL));
+			modelRepo.findModelNameAmountsOwnerBirthDates(DATE_FROM, DATE_TO);
+			birthYearModelCarsRepo.findModelNameAmounts(1970, 2030);
+			birthYearModelCarsRepo.findMinPowerCapacities(1970, 2030);
+			modelCounterRepo.findMostSoldModelNames();
+			modelCounterRepo.findMostPopularModelNames(3);
+			transactionTemplate.executeWithoutResult(status -> {
+				modelCounterRepo.addCounts(MODEL, 1, 1);
+				modelMonthDealsRepo.addDeals(MODEL, DATE_FROM, 1);
+				birthYearModelCarsRepo.addCars(DATE_FROM, new ModelYear(MODEL, 2020), 1);
+				birthYearModelCarsRepo.increment(2000, MODEL, 2020, 1);
+			});
+		});
+	}
+
+	@Test
+	void tradeDealRepoQueries_NoTableScans() {
+		assertNoTableScans(() -> {
+			tradeDealRepo.findByCarNumber(CAR_NUMBER);
+			tradeDealRepo.countByCarNumber(CAR_NUMBER);
+			tradeDealRepo.countByCarNumbers(List.of(CAR_NUMBER, "222-11-111"));
+			tradeDealRepo.countByCarNumbersGroupByMonth(List.of(CAR_NUMBER, "222-11-111"));
+			tradeDealRepo.countByCarOwnerIds(List.of(PERSON_ID));
+			tradeDealRepo.findByCarOwnerId(PERSON_ID);
+			tradeDealRepo.countByCarModelModelYearNameAndDateBetween(MODEL, DATE_FROM, DATE_TO);
+			tradeDealRepo.findHistoryByCarNumberAfter(CAR_NUMBER, DATE_FROM, 0, 10);
+			tradeDealRepo.findHistoryByOwnerIdAfter(PERSON_ID, DATE_FROM, 0, 10);
+			tradeDealRepo.findHistoryByCarNumber(CAR_NUMBER);
+			tradeDealRepo.findHistoryByOwnerId(PERSON_ID);
+		});
+	}
+
+	private void assertNoTableScans(Runnable queries) {
+		statements.clear();
+		queries.run();
+		assertFalse(statements.isEmpty());
+		List<String> scans = new ArrayList<>();
+		for (String sql : new LinkedHashSet<>(statements)) {
+			String plan = explain(sql);
+			if (plan.contains(TABLE_SCAN)) {
+				scans.add(plan);
+			}
+		}
+		assertTrue(scans.isEmpty(), () -> "table scans:\n" + String.join("\n\n", scans));
+	}
+
+	private String explain(String sql) {
+		return jdbcTemplate.execute((java.sql.Connection connection) -> {
+			try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+				int nParameters = statement.getParameterMetaData().getParameterCount();
+				for (int i = 1; i <= nParameters; i++) {
+					statement.setObject(i, null);
+				}
+				StringBuilder plan = new StringBuilder();
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						plan.append(resultSet.getString(1));
+					}
+				}
+				return plan.toString();
+			}
+		});
+	}
+}
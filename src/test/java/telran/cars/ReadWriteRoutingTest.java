@@ -0,0 +1,77 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.jdbc.Sql;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import telran.cars.dto.PersonDto;
+import telran.cars.service.CarsService;
+
+/**
+ * Two embedded H2 databases stand for the primary and the read replica, the
+ * replica is refreshed by a script of the primary before each test
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:primarydb",
+		"app.datasource.replica.url=jdbc:h2:mem:replicadb;DB_CLOSE_DELAY=-1",
+		"app.datasource.replica.hikari.maximum-pool-size=2" })
+@Sql(scripts = { "classpath:test_data.sql" })
+class ReadWriteRoutingTest {
+	private static final String CAR_NUMBER_1 = "111-11-111";
+	private static final Long PERSON_ID_1 = 123l;
+	private static final String EMAIL_PRIMARY = "name1@gmail.com";
+	private static final String EMAIL_REPLICA = "replica@gmail.com";
+	private static final String NEW_EMAIL = "name1@tel-ran.co.il";
+
+	@Autowired
+	CarsService carsService;
+
+	@Autowired
+	@Qualifier("primaryDataSource")
+	HikariDataSource primaryDataSource;
+
+	@Autowired
+	@Qualifier("replicaDataSource")
+	HikariDataSource replicaDataSource;
+
+	@BeforeEach
+	void replicate() {
+		JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+		replica.execute("drop all objects");
+		List<String> script = new JdbcTemplate(primaryDataSource).queryForList("script", String.class);
+		script.forEach(replica::execute);
+		replica.update("update car_owners set email = ? where id = ?", EMAIL_REPLICA, PERSON_ID_1);
+	}
+
+	@Test
+	void readOnlyTransactions_Replica() {
+		assertEquals(EMAIL_REPLICA, carsService.getCarOwner(CAR_NUMBER_1).email());
+		assertEquals(1, carsService.getOwnerCars(PERSON_ID_1).size());
+	}
+
+	@Test
+	void writeTransactions_Primary() {
+		carsService.updatePerson(new PersonDto(PERSON_ID_1, null, null, NEW_EMAIL));
+		assertEquals(NEW_EMAIL, new JdbcTemplate(primaryDataSource)
+				.queryForObject("select email from car_owners where id = ?", String.class, PERSON_ID_1));
+		assertEquals(EMAIL_REPLICA, carsService.getCarOwner(CAR_NUMBER_1).email());
+	}
+
+	@Test
+	@DirtiesContext
+	void replicaUnavailable_FallbackToPrimary() {
+		replicaDataSource.close();
+		assertEquals(EMAIL_PRIMARY, carsService.getCarOwner(CAR_NUMBER_1).email());
+		assertEquals(EMAIL_PRIMARY, carsService.getCarOwner(CAR_NUMBER_1).email());
+	}
+}
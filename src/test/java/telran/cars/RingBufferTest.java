@@ -0,0 +1,90 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import org.junit.jupiter.api.Test;
+
+import telran.cars.service.events.RingBuffer;
+
+class RingBufferTest {
+	private static final int N_PRODUCERS = 4;
+	private static final int N_ITEMS = 10_000;
+	private static final int CAPACITY = 64;
+
+	record Item(int producer, int number) {
+	}
+
+	@Test
+	void offer_EveryConsumerReceivesAllItemsInOrder() throws Exception {
+		RingBuffer<Item> ringBuffer = new RingBuffer<>(CAPACITY);
+		List<RingBuffer<Item>.Consumer> consumers = List.of(ringBuffer.newConsumer(), ringBuffer.newConsumer());
+		ExecutorService executor = Executors.newFixedThreadPool(N_PRODUCERS + consumers.size());
+		try {
+			List<Future<List<Item>>> received = consumers.stream()
+					.map(consumer -> executor.submit(() -> consume(consumer, N_PRODUCERS * N_ITEMS))).toList();
+			List<Future<?>> producers = new ArrayList<>();
+			for (int producer = 0; producer < N_PRODUCERS; producer++) {
+				int producerId = producer;
+				producers.add(executor.submit(() -> {
+					for (int i = 0; i < N_ITEMS; i++) {
+						assertTrue(ringBuffer.offer(new Item(producerId, i), 10, TimeUnit.SECONDS));
+					}
+				}));
+			}
+			for (Future<?> producer : producers) {
+				producer.get(30, TimeUnit.SECONDS);
+			}
+			for (Future<List<Item>> items : received) {
+				int[] nextNumbers = new int[N_PRODUCERS];
+				for (Item item : items.get(30, TimeUnit.SECONDS)) {
+					assertEquals(nextNumbers[item.producer()]++, item.number());
+				}
+				for (int nextNumber : nextNumbers) {
+					assertEquals(N_ITEMS, nextNumber);
+				}
+			}
+			assertEquals(CAPACITY, ringBuffer.remainingCapacity());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void offer_FullBufferTimeout() {
+		RingBuffer<Item> ringBuffer = new RingBuffer<>(3);
+		assertEquals(4, ringBuffer.capacity());
+		RingBuffer<Item>.Consumer consumer = ringBuffer.newConsumer();
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ringBuffer.offer(new Item(0, i), 0, TimeUnit.MILLISECONDS));
+		}
+		assertEquals(0, ringBuffer.remainingCapacity());
+		assertFalse(ringBuffer.offer(new Item(0, 4), 1, TimeUnit.MILLISECONDS));
+		List<Item> batch = new ArrayList<>();
+		assertEquals(2, consumer.poll(batch, 2));
+		assertEquals(List.of(new Item(0, 0), new Item(0, 1)), batch);
+		// the polled slots are released only by commit
+		assertFalse(ringBuffer.offer(new Item(0, 4), 1, TimeUnit.MILLISECONDS));
+		consumer.commit(2);
+		assertTrue(ringBuffer.offer(new Item(0, 4), 0, TimeUnit.MILLISECONDS));
+		assertEquals(3, consumer.lag());
+	}
+
+	private List<Item> consume(RingBuffer<Item>.Consumer consumer, int nItems) {
+		List<Item> res = new ArrayList<>(nItems);
+		List<Item> batch = new ArrayList<>();
+		while (res.size() < nItems) {
+			int nPolled = consumer.poll(batch, 16);
+			res.addAll(batch);
+			batch.clear();
+			consumer.commit(nPolled);
+			if (nPolled == 0) {
+				Thread.yield();
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,71 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import telran.cars.dto.TradeDealDto;
+import telran.cars.service.CarsService;
+
+/**
+ * The database has the schema and the data created by ddl-auto=update before
+ * the migrations are run, as the database of an existing deployment
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:legacydb" })
+class SchemaMigrationsTest {
+	private static final String CAR_NUMBER_1 = "111-11-111";
+	private static final String EMAIL_1 = "name1@gmail.com";
+	private static final String CAR_NUMBER_2 = "222-11-111";
+	private static final long PERSON_ID_1 = 123l;
+	private static final long MAX_LEGACY_DEAL_ID = 250;
+
+	@Autowired
+	CarsService carsService;
+	@Autowired
+	Flyway flyway;
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@TestConfiguration
+	static class LegacySchemaConfiguration {
+		@Bean
+		FlywayMigrationStrategy legacySchemaMigrationStrategy() {
+			return flyway -> {
+				try (Connection connection = flyway.getConfiguration().getDataSource().getConnection()) {
+					ScriptUtils.executeSqlScript(connection, new ClassPathResource("ddl_auto_schema.sql"));
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				flyway.migrate();
+			};
+		}
+	}
+
+	@Test
+	void existingSchema_BaselinedAndMigrated() {
+		MigrationInfo[] applied = flyway.info().applied();
+		assertEquals("0", applied[0].getVersion().getVersion());
+		assertEquals(flyway.info().current().getVersion(), applied[applied.length - 1].getVersion());
+		assertEquals(0, flyway.info().pending().length);
+		assertEquals(EMAIL_1, carsService.getCarOwner(CAR_NUMBER_1).email());
+	}
+
+	@Test
+	void purchase_SequencePastExistingIds() {
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_2, PERSON_ID_1, "2023-12-01"));
+		assertEquals(4, jdbcTemplate.queryForObject("select count(*) from trade_deals", Long.class));
+		assertTrue(jdbcTemplate.queryForObject("select max(id) from trade_deals", Long.class) > MAX_LEGACY_DEAL_ID);
+	}
+}
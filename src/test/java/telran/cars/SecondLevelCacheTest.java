@@ -0,0 +1,86 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+
+import jakarta.persistence.EntityManagerFactory;
+import telran.cars.dto.*;
+import telran.cars.repo.*;
+import telran.cars.service.*;
+import telran.cars.service.model.*;
+
+/**
+ * The test data script writes the tables bypassing the second-level cache, so
+ * the cache is cleared after it before each test
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:cachedb",
+		"spring.jpa.properties.hibernate.generate_statistics=true",
+		"spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+		"spring.jpa.properties.hibernate.cache.use_query_cache=true",
+		"spring.jpa.properties.hibernate.cache.region.factory_class=jcache",
+		"spring.jpa.properties.hibernate.javax.cache.provider=com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider",
+		"spring.jpa.properties.hibernate.javax.cache.missing_cache_strategy=fail" })
+@Sql(scripts = { "classpath:test_data.sql" })
+class SecondLevelCacheTest {
+	private static final String MODEL1 = "model1";
+	private static final String CAR_NUMBER_1 = "111-11-111";
+	private static final long PERSON_ID_1 = 123l;
+	private static final long PERSON_ID_2 = 124l;
+	private static final String NEW_EMAIL = "name1@tel-ran.co.il";
+
+	@Autowired
+	CarsService carsService;
+	@Autowired
+	CarOwnerRepo carOwnerRepo;
+	@Autowired
+	CarRepo carRepo;
+	@Autowired
+	ModelRepo modelRepo;
+	@Autowired
+	EntityCaches entityCaches;
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	@BeforeEach
+	void evictAll() {
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	void entities_HitsAndInvalidation() {
+		long hits = entityCaches.getStats("car-owners").hits();
+		assertEquals("name1@gmail.com", carOwnerRepo.findById(PERSON_ID_1).get().getEmail());
+		assertEquals("name1@gmail.com", carOwnerRepo.findById(PERSON_ID_1).get().getEmail());
+		assertEquals(hits + 1, entityCaches.getStats("car-owners").hits());
+
+		carsService.updatePerson(new PersonDto(PERSON_ID_1, "name1", "2000-10-10", NEW_EMAIL));
+		assertEquals(NEW_EMAIL, carOwnerRepo.findById(PERSON_ID_1).get().getEmail());
+
+		carsService.purchase(new TradeDealDto(CAR_NUMBER_1, PERSON_ID_2, "2023-12-01"));
+		assertEquals(PERSON_ID_2, carRepo.findById(CAR_NUMBER_1).get().getCarOwner().getId());
+		hits = entityCaches.getStats("cars").hits();
+		// the car is detached from the deleted owner by the foreign key
+		carsService.deletePerson(PERSON_ID_2);
+		assertNull(carRepo.findById(CAR_NUMBER_1).get().getCarOwner());
+		assertTrue(entityCaches.getStats().containsKey("models"));
+		assertTrue(entityCaches.getStats("cars").hits() >= hits);
+	}
+
+	@Test
+	void modelsQuery_InvalidatedByAddModel() {
+		assertEquals(2, modelRepo.findByModelYearNameIn(List.of(MODEL1)).size());
+		long hits = entityCaches.getStats("default-query-results-region").hits();
+		assertEquals(2, modelRepo.findByModelYearNameIn(List.of(MODEL1)).size());
+		assertEquals(hits + 1, entityCaches.getStats("default-query-results-region").hits());
+		carsService.addModel(new ModelDto(MODEL1, 2024, "company1", 100, 1400));
+		assertEquals(3, modelRepo.findByModelYearNameIn(List.of(MODEL1)).size());
+		assertTrue(entityCaches.getStats("default-query-results-region").hitRatio() > 0);
+	}
+}
@@ -0,0 +1,78 @@
+package telran.cars;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+
+import telran.cars.tracing.*;
+
+/**
+ * Every request is sampled and is slow by the test properties
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:tracingdb", "app.tracing.sample-rate=1",
+		"app.tracing.slow-threshold-millis=0", "management.endpoints.web.exposure.include=traces" })
+@AutoConfigureMockMvc
+@Sql(scripts = { "classpath:test_data.sql" })
+class TracingTest {
+	private static final String CAR_NUMBER_1 = "111-11-111";
+
+	@Autowired
+	MockMvc mockMvc;
+	@Autowired
+	Tracer tracer;
+
+	@Test
+	void sampledRequest_Spans() throws Exception {
+		mockMvc.perform(get("/cars/" + CAR_NUMBER_1)).andExpect(status().isOk());
+		RecordedTrace trace = tracer.getTraces().sampled().get(0);
+		assertEquals("GET /cars/{carNumber}", trace.name());
+		assertEquals(200, trace.status());
+		assertEquals(trace, tracer.getTraces().slow().get(0));
+		List<SpanKind> kinds = trace.spans().stream().map(Span::kind).distinct().toList();
+		assertTrue(kinds.containsAll(List.of(SpanKind.CONTROLLER, SpanKind.SERVICE, SpanKind.SQL)));
+		assertTrue(trace.spans().stream().anyMatch(span -> span.kind() == SpanKind.SERVICE
+				&& span.name().equals("getCarOwner") && !span.error()));
+		assertTrue(trace.spans().stream()
+				.anyMatch(span -> span.kind() == SpanKind.SQL && span.name().startsWith("select")));
+
+		mockMvc.perform(get("/cars/person/1111111111")).andExpect(status().isBadRequest());
+		assertEquals(400, tracer.getTraces().sampled().get(0).status());
+		String dump = mockMvc.perform(get("/actuator/traces")).andExpect(status().isOk()).andReturn().getResponse()
+				.getContentAsString();
+		assertTrue(dump.contains("GET /cars/{carNumber}"));
+	}
+
+	@Test
+	void notSampledRequest_SpansKeptIfSlow() {
+		Tracer notSampling = new Tracer(0, 0, 10, 2);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(notSampling.begin());
+			assertFalse(notSampling.begin());
+			for (int j = 0; j < 12; j++) {
+				Tracer.addSpan(SpanKind.SERVICE, "getCarOwner", System.nanoTime(), false);
+			}
+			RecordedTrace trace = notSampling.end("request" + i, 200);
+			assertFalse(trace.sampled());
+			assertEquals(10, trace.spans().size());
+			assertEquals(2, trace.droppedSpans());
+		}
+		Traces traces = notSampling.getTraces();
+		assertTrue(traces.sampled().isEmpty());
+		assertEquals(List.of("request2", "request1"), traces.slow().stream().map(RecordedTrace::name).toList());
+
+		Tracer notSlow = new Tracer(0, 60000, 10, 2);
+		assertTrue(notSlow.begin());
+		Tracer.addSpan(SpanKind.SERVICE, "getCarOwner", System.nanoTime(), false);
+		assertTrue(notSlow.end("request", 200).spans().isEmpty());
+		assertTrue(notSlow.getTraces().slow().isEmpty());
+	}
+}
@@ -0,0 +1,56 @@
+-- Schema and data of a database created by ddl-auto=update before the schema was owned by Flyway:
+-- primary key of the models in the order of the embedded id, cars without version, identity ids of the trade deals
+create table models (
+	engine_capacity integer not null,
+	engine_power integer not null,
+	model_year integer not null,
+	company varchar(255) not null,
+	model_name varchar(255) not null,
+	primary key (model_year, model_name)
+);
+create table car_owners (
+	birth_date date not null,
+	id bigint not null,
+	email varchar(255),
+	name varchar(255),
+	primary key (id)
+);
+create table cars (
+	kilometers integer,
+	model_year integer not null,
+	owner_id bigint,
+	car_number varchar(255) not null,
+	car_state varchar(255) check (car_state in ('OLD', 'NEW', 'GOOD', 'MIDDLE', 'BAD')),
+	color varchar(255),
+	model_name varchar(255) not null,
+	primary key (car_number)
+);
+create table trade_deals (
+	date date,
+	id bigint generated by default as identity,
+	owner_id bigint,
+	car_number varchar(255) not null,
+	primary key (id)
+);
+alter table cars add constraint FKcars_models foreign key (model_year, model_name)
+	references models (model_year, model_name) on delete cascade;
+alter table cars add constraint FKcars_car_owners foreign key (owner_id) references car_owners (id) on delete set null;
+alter table trade_deals add constraint FKtrade_deals_cars foreign key (car_number) references cars (car_number)
+	on delete cascade;
+alter table trade_deals add constraint FKtrade_deals_car_owners foreign key (owner_id) references car_owners (id)
+	on delete set null;
+
+insert into models (model_name, model_year, company, engine_capacity, engine_power) values 
+('model1', 2020, 'company1', 1300, 84);
+insert into car_owners (id, name, email, birth_date) values 
+(123, 'name1', 'name1@gmail.com', '2000-10-10'),
+(124, 'name2', 'name2@gmail.com', '1990-12-20');
+insert into cars (car_number, color, kilometers, car_state, model_name, model_year, owner_id) values 
+('111-11-111', 'red', 1000, 'GOOD', 'model1', 2020, 123),
+('222-11-111', 'silver', 10000, 'OLD', 'model1', 2020, 124);
+insert into trade_deals (date, car_number, owner_id) values 
+('2023-03-10', '111-11-111', 123);
+-- identity ids past the start of the trade deals sequence
+insert into trade_deals (id, date, car_number, owner_id) values 
+(100, '2023-04-10', '222-11-111', 124),
+(250, '2023-05-10', '111-11-111', 123);